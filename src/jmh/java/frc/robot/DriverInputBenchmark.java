@@ -0,0 +1,96 @@
+package frc.robot;
+
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.math.Pair;
+import edu.wpi.first.wpilibj.TimedRobot;
+import frc.robot.subsystems.Drivebase;
+import frc.robot.util.InputPipeline;
+
+/**
+ * Driver input shaping from RobotContainer, with the controller replaced by
+ * recorded stick values.
+ */
+@State(Scope.Thread)
+public class DriverInputBenchmark {
+    private static final int INPUTS = 64;
+
+    private final double[] leftX = new double[INPUTS];
+    private final double[] leftY = new double[INPUTS];
+    private int index = 0;
+
+    private Supplier<Pair<Double, Double>> magTheta;
+    private DoubleSupplier translationX;
+    private DoubleSupplier translationY;
+
+    private final double[] rightX = new double[INPUTS];
+    private final InputPipeline pipeline = RobotContainer.createDriverInput(() -> 0.3, () -> 1.0);
+    private final double[] shaped = new double[3];
+    private final DriverInput snapshot = new DriverInput(null);
+
+    @Setup
+    public void setup() {
+        Random random = new Random(5431);
+        for (int i = 0; i < INPUTS; i++) {
+            leftX[i] = random.nextDouble() * 2 - 1;
+            leftY[i] = random.nextDouble() * 2 - 1;
+            rightX[i] = random.nextDouble() * 2 - 1;
+        }
+
+        // Same shape as the default drive supplier in RobotContainer
+        magTheta = () -> {
+            double inX = -leftY[index];
+            double inY = -leftX[index];
+            double mag = Math.hypot(inX, inY);
+            double theta = Math.atan2(inY, inX);
+            return Pair.of(RobotContainer.modifyAxis(mag) * Drivebase.MAX_VELOCITY_METERS_PER_SECOND, theta);
+        };
+        // And how the drive commands turn it back into x and y
+        translationX = () -> magTheta.get().getFirst() * Math.cos(magTheta.get().getSecond());
+        translationY = () -> magTheta.get().getFirst() * Math.sin(magTheta.get().getSecond());
+    }
+
+    @Benchmark
+    public double deadband() {
+        index = (index + 1) % INPUTS;
+        return RobotContainer.deadband(leftX[index], 0.15);
+    }
+
+    @Benchmark
+    public double modifyAxis() {
+        index = (index + 1) % INPUTS;
+        return RobotContainer.modifyAxis(leftX[index]);
+    }
+
+    @Benchmark
+    public double magThetaToXY() {
+        index = (index + 1) % INPUTS;
+        return translationX.getAsDouble() + translationY.getAsDouble();
+    }
+
+    // What replaced the above: one read and shaping per loop, then plain field reads
+    @Benchmark
+    public double snapshot() {
+        index = (index + 1) % INPUTS;
+        snapshot.set(leftX[index], leftY[index], rightX[index]);
+        return snapshot.getTranslationX() + snapshot.getTranslationY();
+    }
+
+    // Radial deadband, curves, scaling and the vector rate/tip limiter that replaced the above
+    @Benchmark
+    public double pipeline() {
+        index = (index + 1) % INPUTS;
+        shaped[0] = -leftY[index];
+        shaped[1] = -leftX[index];
+        shaped[2] = -rightX[index];
+        pipeline.apply(shaped, TimedRobot.kDefaultPeriod);
+        return shaped[0] + shaped[1] + shaped[2];
+    }
+}
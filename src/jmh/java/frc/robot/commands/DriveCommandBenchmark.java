@@ -0,0 +1,104 @@
+package frc.robot.commands;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import frc.robot.DriverInput;
+import frc.robot.Systems;
+import frc.robot.subsystems.Drivebase;
+
+/**
+ * execute() of the drive commands against a Drivebase on simulated modules.
+ */
+@State(Scope.Thread)
+public class DriveCommandBenchmark {
+    private static final int INPUTS = 64;
+
+    private final double[] leftX = new double[INPUTS];
+    private final double[] leftY = new double[INPUTS];
+    private final double[] rightX = new double[INPUTS];
+    private int index = 0;
+
+    private final DriverInput input = new DriverInput(null);
+    private Drivebase drivebase;
+    private DefaultDriveCommand defaultDrive;
+    private DriveLockedRotCommand lockedRot;
+
+    @Setup
+    public void setup() {
+        HAL.initialize(500, 0);
+        // The stance only engages while enabled
+        DriverStationSim.setEnabled(true);
+        DriverStationSim.notifyNewData();
+
+        Random random = new Random(5431);
+        for (int i = 0; i < INPUTS; i++) {
+            leftX[i] = random.nextDouble() * 2 - 1;
+            leftY[i] = random.nextDouble() * 2 - 1;
+            rightX[i] = random.nextDouble() * 2 - 1;
+        }
+
+        // No odometry Notifier running alongside the measurement, periodic() samples instead
+        drivebase = Drivebase.createHeadless();
+        Systems systems = new Systems(drivebase);
+
+        defaultDrive = new DefaultDriveCommand(
+            systems,
+            input::getTranslationX,
+            input::getTranslationY,
+            input::getRotation);
+
+        lockedRot = new DriveLockedRotCommand(
+            systems,
+            input::getTranslationX,
+            input::getTranslationY,
+            90,
+            () -> false);
+        lockedRot.initialize();
+    }
+
+    // What RobotContainer's button loop binding does at the start of each loop
+    private void nextInput() {
+        index = (index + 1) % INPUTS;
+        input.set(leftX[index], leftY[index], rightX[index]);
+    }
+
+    @Benchmark
+    public void defaultDriveExecute() {
+        nextInput();
+        defaultDrive.execute();
+    }
+
+    @Benchmark
+    public void lockedRotExecute() {
+        nextInput();
+        lockedRot.execute();
+    }
+
+    @Benchmark
+    public void drivebasePeriodic() {
+        nextInput();
+        defaultDrive.execute();
+        drivebase.periodic();
+    }
+
+    // Stopped but not in the stance yet, the kinematics still run
+    @Benchmark
+    public void drivebasePeriodicStopped() {
+        drivebase.setAutoStance(false);
+        drivebase.stop();
+        drivebase.periodic();
+    }
+
+    @Benchmark
+    public void drivebasePeriodicStance() {
+        drivebase.setBrakeStance(true);
+        drivebase.periodic();
+    }
+}
@@ -0,0 +1,103 @@
+package frc.robot.util;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.robot.subsystems.Drivebase;
+
+/**
+ * The module math Drivebase.periodic() does every loop: inverse kinematics,
+ * desaturate, optimize and voltage scaling. The WPILib object version is
+ * kept as the baseline the SwerveStateBuffer version replaced.
+ */
+@State(Scope.Thread)
+public class DriveKinematicsBenchmark {
+    private static final int INPUTS = 64;
+
+    private final SwerveDriveKinematics kinematics = new SwerveDriveKinematics(Drivebase.MODULE_LOCATIONS);
+    private final SwerveStateBuffer buffer = new SwerveStateBuffer(Drivebase.MODULE_LOCATIONS);
+
+    private final ChassisSpeeds speeds = new ChassisSpeeds();
+    private final double[] vx = new double[INPUTS];
+    private final double[] vy = new double[INPUTS];
+    private final double[] omega = new double[INPUTS];
+
+    private final double[] currentAngles = new double[4];
+    private final Rotation2d[] currentRotations = new Rotation2d[4];
+    private final double[] voltages = new double[4];
+
+    private int index = 0;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(5431);
+        for (int i = 0; i < INPUTS; i++) {
+            vx[i] = (random.nextDouble() * 2 - 1) * Drivebase.MAX_VELOCITY_METERS_PER_SECOND;
+            vy[i] = (random.nextDouble() * 2 - 1) * Drivebase.MAX_VELOCITY_METERS_PER_SECOND;
+            omega[i] = (random.nextDouble() * 2 - 1) * Drivebase.MAX_ANGULAR_VELOCITY_RADIANS_PER_SECOND;
+        }
+        for (int i = 0; i < 4; i++) {
+            currentAngles[i] = random.nextDouble() * 2 * Math.PI;
+            currentRotations[i] = new Rotation2d(currentAngles[i]);
+        }
+    }
+
+    private int next() {
+        index = (index + 1) % INPUTS;
+        return index;
+    }
+
+    @Benchmark
+    public void wpilibStates(Blackhole bh) {
+        int i = next();
+        speeds.vxMetersPerSecond = vx[i];
+        speeds.vyMetersPerSecond = vy[i];
+        speeds.omegaRadiansPerSecond = omega[i];
+
+        SwerveModuleState[] states = kinematics.toSwerveModuleStates(speeds);
+        SwerveDriveKinematics.desaturateWheelSpeeds(states, Drivebase.MAX_VELOCITY_METERS_PER_SECOND);
+        for (int m = 0; m < states.length; m++) {
+            states[m] = SwerveModuleState.optimize(states[m], currentRotations[m]);
+            voltages[m] = states[m].speedMetersPerSecond / Drivebase.MAX_VELOCITY_METERS_PER_SECOND * Drivebase.MAX_VOLTAGE;
+            bh.consume(states[m].angle.getRadians());
+        }
+        bh.consume(voltages);
+    }
+
+    @Benchmark
+    public void stateBuffer(Blackhole bh) {
+        int i = next();
+        buffer.fromChassisSpeeds(vx[i], vy[i], omega[i]);
+        buffer.desaturate(Drivebase.MAX_VELOCITY_METERS_PER_SECOND);
+        buffer.optimize(currentAngles);
+        for (int m = 0; m < buffer.size(); m++) {
+            voltages[m] = buffer.speeds[m] / Drivebase.MAX_VELOCITY_METERS_PER_SECOND * Drivebase.MAX_VOLTAGE;
+            bh.consume(buffer.angles[m]);
+        }
+        bh.consume(voltages);
+    }
+
+    // Discretized, with steer rates, what Drivebase runs by default
+    @Benchmark
+    public void stateBufferSecondOrder(Blackhole bh) {
+        int i = next();
+        buffer.fromChassisSpeeds(vx[i], vy[i], omega[i], 0.02);
+        buffer.desaturate(Drivebase.MAX_VELOCITY_METERS_PER_SECOND);
+        buffer.optimize(currentAngles);
+        for (int m = 0; m < buffer.size(); m++) {
+            voltages[m] = buffer.speeds[m] / Drivebase.MAX_VELOCITY_METERS_PER_SECOND * Drivebase.MAX_VOLTAGE;
+            bh.consume(buffer.angles[m]);
+            bh.consume(buffer.steerRates[m]);
+        }
+        bh.consume(voltages);
+    }
+}
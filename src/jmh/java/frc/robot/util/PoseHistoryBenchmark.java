@@ -0,0 +1,62 @@
+package frc.robot.util;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import frc.robot.Constants;
+import frc.robot.subsystems.Drivebase;
+
+/**
+ * Recording into and interpolating out of a full PoseHistory the size the
+ * drivebase uses.
+ */
+@State(Scope.Thread)
+public class PoseHistoryBenchmark {
+    private static final int QUERIES = 64;
+    private static final double PERIOD = 1.0 / Constants.ODOMETRY_FREQUENCY_HZ;
+
+    private final PoseHistory history = new PoseHistory(
+        (int) Math.ceil(Drivebase.POSE_HISTORY_SECONDS * Constants.ODOMETRY_FREQUENCY_HZ));
+    private final double[] queries = new double[QUERIES];
+    private final double[] out = new double[PoseHistory.WIDTH];
+
+    private double time = 0;
+    private int index = 0;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < history.getCapacity(); i++) {
+            record();
+        }
+        // Spread over the window, like vision frames of varying latency
+        Random random = new Random(5431);
+        double oldest = history.getOldestTimestamp();
+        double span = history.getNewestTimestamp() - oldest;
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = oldest + random.nextDouble() * span;
+        }
+    }
+
+    private void record() {
+        time += PERIOD;
+        history.record(time, time, -time, time % Math.PI, 1.0, -1.0, 0.5);
+    }
+
+    @Benchmark
+    public void record(Blackhole bh) {
+        record();
+        bh.consume(history.size());
+    }
+
+    @Benchmark
+    public void sample(Blackhole bh) {
+        index = (index + 1) % QUERIES;
+        bh.consume(history.sample(queries[index], out));
+        bh.consume(out);
+    }
+}
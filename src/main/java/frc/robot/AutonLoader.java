@@ -0,0 +1,263 @@
+package frc.robot;
+
+import static frc.robot.Constants.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.pathplanner.lib.PathPlanner;
+import com.pathplanner.lib.PathPlannerTrajectory;
+import com.pathplanner.lib.auto.SwerveAutoBuilder;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
+import edu.wpi.first.wpilibj2.command.FunctionalCommand;
+import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+import frc.robot.commands.FollowCachedTrajectoryCommand;
+import frc.robot.subsystems.Drivebase;
+import frc.robot.util.CachedTrajectory;
+import frc.robot.util.TrajectoryCache;
+import frc.team5431.titan.core.misc.Logger;
+
+/**
+ * Loads every PathPlanner path in deploy/pathplanner when the robot boots
+ * and builds the full auto commands for both alliances right then, so
+ * nothing is generated when autonomous starts.
+ *
+ * Paths come out of the pre-sampled {@link TrajectoryCache} the build
+ * deploys when it's there and matches the .path file. Otherwise they're
+ * generated with PathPlanner, which costs much more boot time. Either way
+ * they're followed with Drivebase.driveRaw using TRANSLATION_PID and
+ * ROTATION_PID. Stop points split a path into a group, and event markers
+ * and stop events run commands from the event map. The auto is picked with
+ * the "Auto" chooser on SmartDashboard.
+ */
+public class AutonLoader {
+    private static final String NONE = "None";
+
+    private final Drivebase drivebase;
+    private final Map<String, Command> eventMap;
+    private final SwerveAutoBuilder autoBuilder;
+    private final TrajectoryCache cache;
+    private int cachedCount = 0;
+    private final Map<String, List<PathPlannerTrajectory>> bluePaths = new HashMap<>();
+    private final Map<String, Command> blueAutos = new HashMap<>();
+    private final Map<String, Command> redAutos = new HashMap<>();
+    private final SendableChooser<String> chooser = new SendableChooser<>();
+
+    /**
+     * @param eventMap commands for marker and stop event names, must be
+     *     complete before this is constructed
+     */
+    public AutonLoader(Drivebase drivebase, Map<String, Command> eventMap) {
+        this.drivebase = drivebase;
+        this.eventMap = eventMap;
+
+        // Alliance flipping is done here ahead of time instead of when each path starts
+        autoBuilder = new SwerveAutoBuilder(
+            drivebase::getEstimatedPosition,
+            drivebase::resetOdometry,
+            TRANSLATION_PID,
+            ROTATION_PID,
+            drivebase::driveRaw,
+            eventMap,
+            false,
+            drivebase);
+
+        chooser.setDefaultOption(NONE, NONE);
+        cache = openCache();
+
+        File directory = new File(Filesystem.getDeployDirectory(), "pathplanner");
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".path"));
+        if (files == null || files.length == 0) {
+            Logger.l("No paths found in " + directory);
+            files = new File[0];
+        }
+        Arrays.sort(files);
+
+        long start = System.nanoTime();
+        for (File file : files) {
+            String name = file.getName();
+            name = name.substring(0, name.length() - ".path".length());
+            if (!loadCached(name, file)) {
+                load(name);
+            }
+        }
+        Logger.l(String.format("Loaded %d autos (%d cached) in %.1f ms",
+            blueAutos.size(), cachedCount, (System.nanoTime() - start) / 1e6));
+
+        SmartDashboard.putData("Auto", chooser);
+    }
+
+    private static TrajectoryCache openCache() {
+        File file = new File(Filesystem.getDeployDirectory(), TrajectoryCache.FILE_NAME);
+        if (!file.exists()) {
+            Logger.l("No trajectory cache, paths will be generated");
+            return null;
+        }
+        try {
+            return TrajectoryCache.open(file);
+        } catch (IOException e) {
+            DriverStation.reportError("Unable to open trajectory cache, paths will be generated", e.getStackTrace());
+            return null;
+        }
+    }
+
+    private boolean loadCached(String name, File pathFile) {
+        if (cache == null) {
+            return false;
+        }
+        TrajectoryCache.Entry entry = cache.get(name);
+        if (entry == null || entry.paths.isEmpty()) {
+            return false;
+        }
+        try {
+            if (TrajectoryCache.crc(pathFile) != entry.crc) {
+                Logger.l("Cached " + name + " doesn't match its .path file, regenerating");
+                return false;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+
+        blueAutos.put(name, cachedAuto(entry.paths, false));
+        redAutos.put(name, cachedAuto(entry.paths, true));
+        chooser.addOption(name, name);
+        cachedCount++;
+        return true;
+    }
+
+    /**
+     * Same sequence SwerveAutoBuilder.fullAuto builds: reset the pose, then
+     * each path's start stop event and the path, then the last end stop event.
+     */
+    private Command cachedAuto(List<CachedTrajectory> paths, boolean red) {
+        Pose2d initialPose = paths.get(0).getInitialPose(red);
+        SequentialCommandGroup auto = new SequentialCommandGroup(
+            Commands.runOnce(() -> drivebase.resetOdometry(initialPose)));
+        for (CachedTrajectory path : paths) {
+            auto.addCommands(
+                stopEventCommand(path.getStartEvent()),
+                new FollowCachedTrajectoryCommand(drivebase, path, red, markerCommands(path)));
+        }
+        auto.addCommands(stopEventCommand(paths.get(paths.size() - 1).getEndEvent()));
+        return auto;
+    }
+
+    private Command stopEventCommand(CachedTrajectory.StopEvent event) {
+        if (event.names.isEmpty()) {
+            return Commands.waitSeconds(event.waitTime);
+        }
+
+        List<Command> commands = new ArrayList<>();
+        for (String name : event.names) {
+            Command command = eventMap.get(name);
+            if (command != null) {
+                commands.add(wrap(command));
+            }
+        }
+        Command events;
+        if (commands.isEmpty()) {
+            events = Commands.none();
+        } else if ("SEQUENTIAL".equals(event.executionBehavior)) {
+            events = Commands.sequence(commands.toArray(new Command[0]));
+        } else if ("PARALLEL_DEADLINE".equals(event.executionBehavior)) {
+            events = Commands.deadline(commands.get(0), commands.subList(1, commands.size()).toArray(new Command[0]));
+        } else {
+            events = Commands.parallel(commands.toArray(new Command[0]));
+        }
+
+        switch (event.waitBehavior) {
+            case "BEFORE":
+                return Commands.sequence(Commands.waitSeconds(event.waitTime), events);
+            case "AFTER":
+                return Commands.sequence(events, Commands.waitSeconds(event.waitTime));
+            case "DEADLINE":
+                return Commands.deadline(Commands.waitSeconds(event.waitTime), events);
+            case "MINIMUM":
+                return Commands.parallel(Commands.waitSeconds(event.waitTime), events);
+            default:
+                return events;
+        }
+    }
+
+    // Wrapped event map commands for each of the path's markers
+    private Command[][] markerCommands(CachedTrajectory path) {
+        Command[][] markers = new Command[path.getMarkerCount()][];
+        for (int i = 0; i < markers.length; i++) {
+            List<Command> commands = new ArrayList<>();
+            for (String name : path.getMarkerNames(i)) {
+                Command command = eventMap.get(name);
+                if (command != null) {
+                    commands.add(wrap(command));
+                }
+            }
+            markers[i] = commands.toArray(new Command[0]);
+        }
+        return markers;
+    }
+
+    // Event map commands can end up in several autos, and a command can only be composed once
+    private static Command wrap(Command command) {
+        return new FunctionalCommand(
+            command::initialize,
+            command::execute,
+            command::end,
+            command::isFinished,
+            command.getRequirements().toArray(new Subsystem[0]));
+    }
+
+    private void load(String name) {
+        List<PathPlannerTrajectory> blue;
+        try {
+            blue = PathPlanner.loadPathGroup(name, PATH_CONSTRAINTS);
+        } catch (RuntimeException e) {
+            DriverStation.reportError("Unable to load path " + name, e.getStackTrace());
+            return;
+        }
+        if (blue == null || blue.isEmpty()) {
+            DriverStation.reportError("Path " + name + " has no trajectories", false);
+            return;
+        }
+
+        List<PathPlannerTrajectory> red = new ArrayList<>(blue.size());
+        for (PathPlannerTrajectory trajectory : blue) {
+            red.add(PathPlannerTrajectory.transformTrajectoryForAlliance(trajectory, Alliance.Red));
+        }
+
+        bluePaths.put(name, blue);
+        blueAutos.put(name, autoBuilder.fullAuto(blue));
+        redAutos.put(name, autoBuilder.fullAuto(red));
+        chooser.addOption(name, name);
+    }
+
+    /**
+     * The auto selected on the dashboard for our alliance, or null for none.
+     */
+    public Command getSelected() {
+        String name = chooser.getSelected();
+        if (name == null || NONE.equals(name)) {
+            return null;
+        }
+        return DriverStation.getAlliance() == Alliance.Red ? redAutos.get(name) : blueAutos.get(name);
+    }
+
+    /**
+     * Blue alliance trajectories for a loaded path, or null.
+     */
+    public List<PathPlannerTrajectory> getPaths(String name) {
+        return bluePaths.get(name);
+    }
+}
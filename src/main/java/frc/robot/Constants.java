@@ -3,6 +3,8 @@ package frc.robot;
 import com.pathplanner.lib.PathConstraints;
 import com.pathplanner.lib.auto.PIDConstants;
 
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Rotation3d;
 import edu.wpi.first.math.geometry.Transform3d;
 import edu.wpi.first.math.geometry.Translation3d;
@@ -21,6 +23,19 @@ public class Constants {
     );
     public static final Transform3d CAMERA_TO_ROBOT = ROBOT_TO_CAMERA.inverse();
 
+    // Camera name as set in the PhotonVision UI
+    public static final String VISION_CAMERA_NAME = "photonvision";
+    // Single-tag results above this ambiguity are thrown out
+    public static final double VISION_MAX_AMBIGUITY = 0.2;
+    public static final double VISION_MAX_DISTANCE_METERS = 5.0;
+    // How far a single-tag pose may land from odometry before it's called an outlier
+    public static final double VISION_MAX_JUMP_METERS = 1.5;
+    public static final double VISION_FIELD_MARGIN_METERS = 0.5;
+    public static final double VISION_MAX_Z_METERS = 0.75;
+    // Std-devs for one tag at one meter, scaled by distance^2 / tag count
+    public static final double VISION_STD_DEV_XY = 0.05;
+    public static final double VISION_STD_DEV_THETA = 0.1;
+
 
 
     public static final TrajectoryConfig ARM_TRAJECTORY_CONFIG_SLOW = new TrajectoryConfig(2, 2);
@@ -34,6 +49,9 @@ public class Constants {
     public static final String CANBUS_DRIVETRAIN = "rio"; // "omnivore"
     public static final String CANBUS_SUBSYSTEM = "";
 
+    // How often the odometry thread samples the modules and gyro
+    public static final double ODOMETRY_FREQUENCY_HZ = 250.0;
+
     /**
      * The left-to-right distance between the drivetrain wheels
      *
@@ -67,6 +85,103 @@ public class Constants {
     public static final int BACK_RIGHT_MODULE_STEER_ENCODER = 12;
     public static final double BACK_RIGHT_MODULE_STEER_OFFSET = -Math.toRadians(240.293);
 
+    //#region Drive velocity control
+    // Drive feedforward, volts / (m/s) / (m/s^2). Re-fit with the drive characterization command.
+    public static final double DRIVE_KS = 0.15;
+    public static final double DRIVE_KV = 2.4;
+    public static final double DRIVE_KA = 0.3;
+    // TalonFX slot 0 velocity gains, native units (1023 = full output per tick/100ms of error)
+    public static final double DRIVE_VELOCITY_KP = 0.05;
+    public static final double DRIVE_VELOCITY_KI = 0.0;
+    public static final double DRIVE_VELOCITY_KD = 0.0;
+    //#endregion Drive velocity control
+
+    //#region Steer control
+    // Fraction of the steer rate feedforward sent to the steer motors, 0 turns it off
+    public static final double STEER_FEEDFORWARD_GAIN = 1.0;
+    //#endregion Steer control
+
+    //#region Motor output
+    // Module setpoints closer than this to the last one sent are dropped
+    public static final double OUTPUT_VOLTAGE_TOLERANCE = 0.01;
+    public static final double OUTPUT_VELOCITY_TOLERANCE = 0.001;
+    public static final double OUTPUT_ANGLE_TOLERANCE = 0.001;
+    public static final double OUTPUT_STEER_RATE_TOLERANCE = 0.01;
+    // Resend at least this often anyway
+    public static final double OUTPUT_KEEP_ALIVE_SECONDS = 0.1;
+    //#endregion Motor output
+
+    //#region Power
+    // Steering always gets its full limit, drive motors share what's left
+    public static final double STEER_CURRENT_LIMIT = 30.0;
+    // Per drive motor supply current limit, full battery to sagging battery
+    public static final double POWER_DRIVE_MAX_CURRENT = 40.0;
+    public static final double POWER_DRIVE_MIN_CURRENT = 20.0;
+    // Drive limits start dropping below the high voltage and bottom out at the low one.
+    // The roboRIO browns out at 6.8V.
+    public static final double POWER_VOLTAGE_HIGH = 9.0;
+    public static final double POWER_VOLTAGE_LOW = 7.5;
+    // Supply current the whole drivetrain may draw, steering included
+    public static final double POWER_CURRENT_BUDGET = 200.0;
+    // Sags are acted on right away, recovery is filtered over this long
+    public static final double POWER_RECOVERY_SECONDS = 0.5;
+    // Drive limits only get re-sent when they move by this much
+    public static final double POWER_LIMIT_STEP = 2.0;
+    //#endregion Power
+
+    //#region Driver input
+    // Applied to the length of the stick vector, not each axis
+    public static final double DRIVER_DEADBAND = 0.15;
+    public static final double DRIVER_TRANSLATION_EXPONENT = 2.0;
+    public static final double DRIVER_ROTATION_EXPONENT = 2.0;
+    // Around what the wheels can put down before slipping
+    public static final double DRIVER_MAX_ACCELERATION = 8.0;
+    public static final double DRIVER_MAX_JERK = 80.0;
+    // Estimated, raise it if anything tall gets mounted
+    public static final double ROBOT_COG_HEIGHT_METERS = 0.3;
+    public static final double TIP_SAFETY_FACTOR = 0.8;
+    //#endregion Driver input
+
+    //#region Traction control
+    // A wheel off from the ground speed by less than this, m/s or fraction of its speed, still grips
+    public static final double TRACTION_SLIP_SPEED = 0.3;
+    public static final double TRACTION_SLIP_RATIO = 0.2;
+    // Wheels this far, m/s, from the accelerometer's velocity are all spinning together
+    public static final double TRACTION_SPIN_SPEED = 0.75;
+    // How much faster than the ground a slipping wheel is still driven, m/s
+    public static final double TRACTION_SLIP_ALLOWANCE = 0.25;
+    // Tilted more than this either way, pitch and roll together, gravity swamps the accelerometer
+    public static final double TRACTION_MAX_TILT_DEGREES = 5.0;
+    // Yaw changing faster than this between odometry samples, rad/s, is the gyro being reset,
+    // not the robot turning. The drive tops out around 12.
+    public static final double ODOMETRY_MAX_YAW_RATE = 20.0;
+
+    // RMS wheel speed off the fitted twist, m/s, or acceleration, m/s^2, that counts as a collision
+    public static final double COLLISION_RESIDUAL = 0.5;
+    public static final double COLLISION_ACCELERATION = 15.0;
+    // Odometry std-devs grow by up to this after a collision, back to normal over the hold time
+    public static final double COLLISION_STD_DEV_SCALE = 5.0;
+    public static final double COLLISION_HOLD_SECONDS = 0.5;
+    //#endregion Traction control
+
+    //#region Brake stance
+    // Stopped this long, the drivebase drops into the X stance on its own
+    public static final double STANCE_ENGAGE_SECONDS = 0.25;
+    // A wheel rolled further than this since the stance started drives back
+    public static final double STANCE_POSITION_DEADBAND = 0.02;
+    // m/s per meter a wheel was rolled
+    public static final double STANCE_KP = 4.0;
+    public static final double STANCE_MAX_SPEED = 1.0;
+    //#endregion Brake stance
+
+    //#region Heading lock
+    // rad/s of correction per radian of heading error
+    public static final double HEADING_KP = 5.0;
+    // rad/s of correction per rad/s of yaw rate error, damps with the gyro instead of a noisy derivative
+    public static final double HEADING_KD = 0.3;
+    public static final double HEADING_MAX_ACCELERATION = 4 * Math.PI;
+    //#endregion Heading lock
+
     //#region Auto Constants
     // Pretty sure constraints from the path file are not used, and the following is.
     public static final PathConstraints PATH_CONSTRAINTS = new PathConstraints(4, 3);
@@ -74,4 +189,12 @@ public class Constants {
     public static final PIDConstants ROTATION_PID = new PIDConstants(2.5, 0, 0);
     //#endregion Auto Constants
 
+    //#region Drive to pose
+    // Blue alliance spots the driver can send the robot to, mirrored for red
+    // Across the lane opponents use to leave their loading zone
+    public static final Pose2d DEFENSE_LANE_POSE = new Pose2d(4.5, 6.4, Rotation2d.fromDegrees(180));
+    // Center of the field, in front of the charge stations
+    public static final Pose2d DEFENSE_CENTER_POSE = new Pose2d(8.27, 4.0, Rotation2d.fromDegrees(0));
+    //#endregion Drive to pose
+
 }
@@ -0,0 +1,107 @@
+package frc.robot;
+
+import frc.robot.subsystems.Drivebase;
+import frc.team5431.titan.core.joysticks.CommandXboxController;
+
+/**
+ * The driver's sticks, read once per loop and shaped once, as primitives.
+ * Every drive command reads from the same snapshot instead of polling the
+ * controller and rebuilding the same values itself.
+ *
+ * {@link #update()} is bound to the scheduler's button loop, so it runs at
+ * the start of every CommandScheduler.run(), before any command executes.
+ */
+public class DriverInput {
+    private final CommandXboxController controller;
+
+    // Raw stick values
+    private double leftX;
+    private double leftY;
+    private double rightX;
+
+    // Field-relative, x away from our alliance wall
+    private double fieldX;
+    private double fieldY;
+    private double fieldRotation;
+
+    // Shaped with RobotContainer.modifyAxis, m/s and rad/s
+    private double translationX;
+    private double translationY;
+    private double rotation;
+
+    /**
+     * @param controller null to only take values from {@link #set(double, double, double)}
+     */
+    public DriverInput(CommandXboxController controller) {
+        this.controller = controller;
+    }
+
+    public void update() {
+        if (controller != null) {
+            set(controller.getLeftX(), controller.getLeftY(), controller.getRightX());
+        }
+    }
+
+    public void set(double leftX, double leftY, double rightX) {
+        this.leftX = leftX;
+        this.leftY = leftY;
+        this.rightX = rightX;
+
+        fieldX = -leftY; // swap intended
+        fieldY = -leftX;
+        fieldRotation = -rightX;
+
+        // Curve the length of the stick vector, keep its direction.
+        // Capped at 1, the corners of the stick's square reach 1.41
+        double magnitude = Math.hypot(fieldX, fieldY);
+        double scale = magnitude > 0
+            ? RobotContainer.modifyAxis(Math.min(magnitude, 1.0)) * Drivebase.MAX_VELOCITY_METERS_PER_SECOND / magnitude
+            : 0.0;
+        translationX = fieldX * scale;
+        translationY = fieldY * scale;
+        rotation = RobotContainer.modifyAxis(fieldRotation) * Drivebase.MAX_ANGULAR_VELOCITY_RADIANS_PER_SECOND;
+    }
+
+    public double getLeftX() {
+        return leftX;
+    }
+
+    public double getLeftY() {
+        return leftY;
+    }
+
+    public double getRightX() {
+        return rightX;
+    }
+
+    public double getFieldX() {
+        return fieldX;
+    }
+
+    public double getFieldY() {
+        return fieldY;
+    }
+
+    public double getFieldRotation() {
+        return fieldRotation;
+    }
+
+    public double getTranslationX() {
+        return translationX;
+    }
+
+    public double getTranslationY() {
+        return translationY;
+    }
+
+    public double getRotation() {
+        return rotation;
+    }
+
+    /**
+     * True while the driver is turning the robot with the right stick.
+     */
+    public boolean isRotating() {
+        return rotation != 0;
+    }
+}
@@ -4,23 +4,28 @@
 
 package frc.robot;
 
-import edu.wpi.first.math.Pair;
 import edu.wpi.first.wpilibj.DataLogManager;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
-
-import java.util.ArrayList;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.PeriodicScheduler;
+import frc.robot.util.Telemetry;
 
 import com.pathplanner.lib.server.PathPlannerServer;
 
 public class Robot extends TimedRobot {
-  public static final ArrayList<Pair<Runnable, Double>> periodics = new ArrayList<>();
+  public static final PeriodicScheduler periodics = new PeriodicScheduler();
   private Command m_autonomousCommand;
 
   private RobotContainer m_robotContainer;
 
+  private final LoopProfiler m_profiler = LoopProfiler.getInstance();
+  private int m_schedulerSection;
+  private int m_containerSection;
+  private int m_telemetrySection;
+
   @Override
   public void robotInit() {
     DriverStation.silenceJoystickConnectionWarning(true); // false
@@ -28,22 +33,41 @@ public class Robot extends TimedRobot {
     DataLogManager.start();
     m_robotContainer = new RobotContainer();
 
+    m_schedulerSection = m_profiler.register("CommandScheduler.run");
+    m_containerSection = m_profiler.register("RobotContainer.robotPeriodic");
+    m_telemetrySection = m_profiler.register("Telemetry.update");
+    // After RobotContainer, so our button-loop binding runs after the driver's
+    m_profiler.instrumentScheduler(CommandScheduler.getInstance());
+    Telemetry.getInstance().addAction(m_profiler::publish, 1.0);
+
     // try {
     //   CameraServer.startAutomaticCapture();
     // } catch (VideoException e) {
     //   Logger.l("Unable to start automatic capture for CameraServer!");
     // }
 
-    // initialization should have finished, so register periodics
-    for (var period : periodics) {
-      addPeriodic(period.getFirst(), period.getSecond());
-    }
+    // periodics can be added at any time, this just starts the base tick
+    addPeriodic(periodics::run, PeriodicScheduler.BASE_PERIOD_SECONDS);
   }
 
   @Override
   public void robotPeriodic() {
+    m_profiler.beginLoop();
+
+    long start = System.nanoTime();
     CommandScheduler.getInstance().run();
+    m_profiler.record(m_schedulerSection, start);
+
+    start = System.nanoTime();
     m_robotContainer.robotPeriodic();
+    m_profiler.record(m_containerSection, start);
+
+    // Last, so it sees everything this loop changed
+    start = System.nanoTime();
+    Telemetry.getInstance().update();
+    m_profiler.record(m_telemetrySection, start);
+
+    m_profiler.endLoop();
   }
 
   @Override
@@ -59,7 +83,10 @@ public class Robot extends TimedRobot {
 
   @Override
   public void autonomousInit() {
- 
+    m_autonomousCommand = m_robotContainer.getAutonomousCommand();
+    if (m_autonomousCommand != null) {
+      m_autonomousCommand.schedule();
+    }
   }
 
   @Override
@@ -6,46 +6,87 @@ package frc.robot;
 
 import static edu.wpi.first.wpilibj2.command.Commands.run;
 import static edu.wpi.first.wpilibj2.command.Commands.runOnce;
+import static edu.wpi.first.wpilibj2.command.Commands.startEnd;
 
 import frc.robot.commands.DefaultDriveCommand;
+import frc.robot.commands.DriveCharacterizationCommand;
 import frc.robot.commands.DriveLockedRotCommand;
+import frc.robot.commands.DriveToPoseCommand;
 import frc.team5431.titan.core.joysticks.CommandXboxController;
+import frc.team5431.titan.core.misc.Logger;
 
 
-import java.util.function.BooleanSupplier;
-import java.util.function.Supplier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
 
 
-import edu.wpi.first.math.Pair;
-
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
 
 import frc.robot.subsystems.Drivebase;
+import frc.robot.util.AllianceFlip;
+import frc.robot.util.InputPipeline;
+import frc.robot.util.InputStages;
 
 
 public class RobotContainer {
-    private final Systems systems = new Systems();
-    public final Drivebase drivebase = systems.getDrivebase();
+    private final Systems systems;
+    public final Drivebase drivebase;
 
     private final CommandXboxController driver = new CommandXboxController(0);
+    private final DriverInput driverInput = new DriverInput(driver);
+
+    private final AutonLoader autonLoader;
 
     public RobotContainer() {
+        this(new Systems());
+    }
+
+    public RobotContainer(Systems systems) {
+        this.systems = systems;
+        this.drivebase = systems.getDrivebase();
+        drivebase.addDashboard();
 
-        driver.setDeadzone(0.15);
+        // Default drive deadbands the whole stick vector itself, see createDriverInput
+        driver.setDeadzone(0.0);
+
+        // Before any trigger or command, so everything this loop sees the same sticks
+        CommandScheduler.getInstance().getDefaultButtonLoop().bind(driverInput::update);
 
         drivebase.setDefaultCommand(new DefaultDriveCommand(
             systems,
-            () -> {
-                double inX = -driver.getLeftY(); // swap intended
-                double inY = -driver.getLeftX();
-                double mag = Math.hypot(inX, inY);
-                double theta = Math.atan2(inY, inX);
-                return Pair.of(modifyAxis(mag) * Drivebase.MAX_VELOCITY_METERS_PER_SECOND, theta);
-            },
-            () -> modifyAxis(-driver.getRightX()) * Drivebase.MAX_ANGULAR_VELOCITY_RADIANS_PER_SECOND));
+            driverInput::getFieldX,
+            driverInput::getFieldY,
+            driverInput::getFieldRotation,
+            createDriverInput(
+                () -> drivebase.getGyroscopeRotation().getRadians(),
+                drivebase.getPowerManager()::getSlewScale)));
 
         configureBindings();
 
+        autonLoader = new AutonLoader(drivebase, createEventMap());
+    }
+
+    /**
+     * Commands run by PathPlanner event markers and stop events. Markers run
+     * alongside path following, so they must not require the drivebase.
+     */
+    private Map<String, Command> createEventMap() {
+        Map<String, Command> eventMap = new HashMap<>();
+        eventMap.put("stop", runOnce(drivebase::stop));
+        eventMap.put("leftCommunity", runOnce(() -> Logger.l("Left community")));
+        return eventMap;
+    }
+
+    public DriverInput getDriverInput() {
+        return driverInput;
+    }
+
+    public Command getAutonomousCommand() {
+        return autonLoader.getSelected();
     }
 
 
@@ -63,28 +104,51 @@ public class RobotContainer {
         driver.povRight().whileTrue(run(
                 () -> drivebase.drive(new ChassisSpeeds(0, -Drivebase.MAX_VELOCITY_METERS_PER_SECOND*0.15, 0)), drivebase));
 
+        driver.a().onTrue(new DriveLockedRotCommand(systems, driverInput, 180));
+        driver.b().onTrue(new DriveLockedRotCommand(systems, driverInput, 270));
+        driver.x().onTrue(new DriveLockedRotCommand(systems, driverInput, 90));
+        driver.y().onTrue(new DriveLockedRotCommand(systems, driverInput, 0));
 
-        Supplier<Pair<Double, Double>> defaultDrive = () -> {
-            double inX = -Math.pow(driver.getLeftY(), 2); // swap intended
-            double inY = -Math.pow(driver.getLeftX(), 2);
-            double mag = Math.hypot(inX, inY);
-            double theta = Math.atan2(inY, inX);
-            return Pair.of(modifyAxis(mag) * Drivebase.MAX_VELOCITY_METERS_PER_SECOND, theta);
-        };
+        // Start toggles the X stance, held against pushes whatever the sticks say
+        driver.start().toggleOnTrue(startEnd(
+                () -> drivebase.setBrakeStance(true), () -> drivebase.setBrakeStance(false)));
 
-        BooleanSupplier isManualAdjustment = () -> {
-            return modifyAxis(-driver.getRightX()) != 0;
-        };
+        // Bumpers drive to defense spots while held
+        driver.leftBumper().whileTrue(new DriveToPoseCommand(systems, () -> AllianceFlip.forAlliance(Constants.DEFENSE_LANE_POSE)));
+        driver.rightBumper().whileTrue(new DriveToPoseCommand(systems, () -> AllianceFlip.forAlliance(Constants.DEFENSE_CENTER_POSE)));
 
-        driver.a().onTrue(new DriveLockedRotCommand(systems, defaultDrive, 180, isManualAdjustment));
-        driver.b().onTrue(new DriveLockedRotCommand(systems, defaultDrive, 270, isManualAdjustment));
-        driver.x().onTrue(new DriveLockedRotCommand(systems, defaultDrive, 90, isManualAdjustment));
-        driver.y().onTrue(new DriveLockedRotCommand(systems, defaultDrive, 0, isManualAdjustment));
+        SmartDashboard.putData("Characterize drive", new DriveCharacterizationCommand(systems));
 
     }
 
 
-    private static double deadband(double value, double deadband) {
+    /**
+     * Stick values to field-relative speeds: radial deadband, response
+     * curve, scale, then vector acceleration/jerk limiting capped to what
+     * won't tip the robot.
+     *
+     * @param headingRadians robot heading, for the direction-dependent tip limit
+     * @param accelerationScale fraction of the acceleration limit to allow,
+     *     lowered by the drivebase's PowerManager while the battery sags
+     */
+    static InputPipeline createDriverInput(DoubleSupplier headingRadians, DoubleSupplier accelerationScale) {
+        return new InputPipeline(
+            InputStages.radialDeadband(Constants.DRIVER_DEADBAND),
+            InputStages.responseCurve(
+                InputStages.power(Constants.DRIVER_TRANSLATION_EXPONENT),
+                InputStages.power(Constants.DRIVER_ROTATION_EXPONENT)),
+            InputStages.scale(Drivebase.MAX_VELOCITY_METERS_PER_SECOND, Drivebase.MAX_ANGULAR_VELOCITY_RADIANS_PER_SECOND),
+            new InputStages.RateLimiter(Constants.DRIVER_MAX_ACCELERATION, Constants.DRIVER_MAX_JERK, Drivebase.SLEW_RATE_LIMIT_ROTATION)
+                .withAccelerationScale(accelerationScale)
+                .withTipLimit(
+                    Constants.ROBOT_COG_HEIGHT_METERS,
+                    Constants.DRIVETRAIN_WHEELBASE_METERS,
+                    Constants.DRIVETRAIN_TRACKWIDTH_METERS,
+                    Constants.TIP_SAFETY_FACTOR,
+                    headingRadians));
+    }
+
+    static double deadband(double value, double deadband) {
         if (Math.abs(value) > deadband) {
             if (value > 0.0) {
                 return (value - deadband) / (1.0 - deadband);
@@ -96,7 +160,7 @@ public class RobotContainer {
         }
     }
 
-    private static double modifyAxis(double value) {
+    static double modifyAxis(double value) {
         // Deadband
         value = deadband(value, 0.15);
 
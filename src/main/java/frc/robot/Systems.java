@@ -5,11 +5,17 @@ import frc.robot.subsystems.*;
 
 public class Systems {
     private Drivebase drivebase;
+    private Vision vision;
  
 
     public Systems() {
-        drivebase = new Drivebase();
+        this(new Drivebase());
+    }
+
+    public Systems(Drivebase drivebase) {
+        this.drivebase = drivebase;
         if(Robot.isReal()) {
+            vision = new Vision(drivebase);
         }  
     }
 
@@ -17,4 +23,9 @@ public class Systems {
         return drivebase;
     }
 
+    // Null in simulation
+    public Vision getVision() {
+        return vision;
+    }
+
 }
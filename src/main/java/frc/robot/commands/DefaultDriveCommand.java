@@ -1,14 +1,16 @@
 package frc.robot.commands;
 
-import edu.wpi.first.math.Pair;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import frc.robot.Systems;
 import frc.robot.subsystems.Drivebase;
+import frc.robot.util.InputStage;
 import frc.team5431.titan.core.misc.Logger;
 
+import java.util.Optional;
 import java.util.function.DoubleSupplier;
-import java.util.function.Supplier;
 
 public class DefaultDriveCommand extends CommandBase {
     private final Drivebase m_drivetrainSubsystem;
@@ -17,33 +19,48 @@ public class DefaultDriveCommand extends CommandBase {
     private final DoubleSupplier m_translationYSupplier;
     private final DoubleSupplier m_rotationSupplier;
 
+    private final InputStage m_inputPipeline;
+    private final double[] m_input = new double[3];
+
     public DefaultDriveCommand(Systems systems,
                                DoubleSupplier translationXSupplier,
                                DoubleSupplier translationYSupplier,
                                DoubleSupplier rotationSupplier) {
+        this(systems, translationXSupplier, translationYSupplier, rotationSupplier, null);
+    }
+
+    /**
+     * @param inputPipeline turns the suppliers, raw field-relative stick
+     *     values, into meters and radians per second. It does its own rate
+     *     limiting, so the drivebase's is skipped. Null if the suppliers are
+     *     already speeds.
+     */
+    public DefaultDriveCommand(Systems systems,
+                               DoubleSupplier translationXSupplier,
+                               DoubleSupplier translationYSupplier,
+                               DoubleSupplier rotationSupplier,
+                               InputStage inputPipeline) {
         this.m_drivetrainSubsystem = systems.getDrivebase();
         this.m_translationXSupplier = translationXSupplier;
         this.m_translationYSupplier = translationYSupplier;
         this.m_rotationSupplier = rotationSupplier;
+        this.m_inputPipeline = inputPipeline;
 
         addRequirements(m_drivetrainSubsystem);
         setName("DefaultDriveCommand");
     }
 
-    public DefaultDriveCommand(Systems systems,
-                               Supplier<Pair<Double, Double>> magThetaSupplier,
-                               DoubleSupplier rotationSupplier) {
-        this(
-            systems,
-            () -> magThetaSupplier.get().getFirst() * Math.cos(magThetaSupplier.get().getSecond()),
-            () -> magThetaSupplier.get().getFirst() * Math.sin(magThetaSupplier.get().getSecond()),
-            rotationSupplier
-        );
-    }
-
     @Override
     public void initialize() {
         Logger.l("Default drive starting");
+        if (m_inputPipeline != null) {
+            // Pick up from how we're moving now instead of ramping from zero
+            Optional<ChassisSpeeds> velocity = m_drivetrainSubsystem.getFieldVelocityAt(Timer.getFPGATimestamp());
+            m_input[InputStage.X] = velocity.isPresent() ? velocity.get().vxMetersPerSecond : 0.0;
+            m_input[InputStage.Y] = velocity.isPresent() ? velocity.get().vyMetersPerSecond : 0.0;
+            m_input[InputStage.OMEGA] = velocity.isPresent() ? velocity.get().omegaRadiansPerSecond : 0.0;
+            m_inputPipeline.reset(m_input);
+        }
     }
 
     @Override
@@ -52,6 +69,22 @@ public class DefaultDriveCommand extends CommandBase {
         double y = m_translationYSupplier.getAsDouble();
         double rot = m_rotationSupplier.getAsDouble();
 
+        if (m_inputPipeline != null) {
+            m_input[InputStage.X] = x;
+            m_input[InputStage.Y] = y;
+            m_input[InputStage.OMEGA] = rot;
+            m_inputPipeline.apply(m_input, TimedRobot.kDefaultPeriod);
+
+            // Field to robot relative
+            double heading = m_drivetrainSubsystem.getGyroscopeRotation().getRadians();
+            double cos = Math.cos(heading);
+            double sin = Math.sin(heading);
+            double vx = m_input[InputStage.X];
+            double vy = m_input[InputStage.Y];
+            m_drivetrainSubsystem.driveRaw(vx * cos + vy * sin, -vx * sin + vy * cos, m_input[InputStage.OMEGA]);
+            return;
+        }
+
         // You can use `new ChassisSpeeds(...)` for robot-oriented movement instead of field-oriented movement
         m_drivetrainSubsystem.drive(
                 ChassisSpeeds.fromFieldRelativeSpeeds(
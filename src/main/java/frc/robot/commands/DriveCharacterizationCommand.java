@@ -0,0 +1,119 @@
+package frc.robot.commands;
+
+import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.Systems;
+import frc.robot.subsystems.Drivebase;
+import frc.robot.util.FeedforwardFit;
+import frc.team5431.titan.core.misc.Logger;
+
+/**
+ * Fits the drive kS/kV/kA. Points the modules along the robot, runs a slow voltage
+ * ramp (quasistatic) and then a voltage step (dynamic), and fits the
+ * feedforward to the logged voltage/velocity/acceleration samples.
+ *
+ * Needs about 4 meters of clear space in front of the robot. The fit is
+ * applied to the drivebase right away and printed so it can be copied into
+ * Constants.
+ */
+public class DriveCharacterizationCommand extends CommandBase {
+    private static final double SETTLE_SECONDS = 0.5;
+    private static final double RAMP_VOLTS_PER_SECOND = 1.0;
+    private static final double RAMP_SECONDS = 4.0;
+    private static final double REST_SECONDS = 1.5;
+    private static final double STEP_VOLTS = 5.0;
+    private static final double STEP_SECONDS = 1.0;
+
+    private final Drivebase drivebase;
+    private final FeedforwardFit fit = new FeedforwardFit();
+    private final Timer timer = new Timer();
+    private final double[] logSample = new double[3];
+    private final DoubleArrayLogEntry logEntry;
+
+    private double lastTime;
+    private double lastVelocity;
+
+    public DriveCharacterizationCommand(Systems systems) {
+        this.drivebase = systems.getDrivebase();
+        // [volts, m/s, m/s^2]
+        logEntry = new DoubleArrayLogEntry(DataLogManager.getLog(), "/Drivebase/Characterization");
+
+        addRequirements(drivebase);
+        setName("DriveCharacterizationCommand");
+    }
+
+    private double voltageAt(double t) {
+        if (t < SETTLE_SECONDS) {
+            return 0.0;
+        }
+        t -= SETTLE_SECONDS;
+        if (t < RAMP_SECONDS) {
+            return t * RAMP_VOLTS_PER_SECOND;
+        }
+        t -= RAMP_SECONDS;
+        if (t < REST_SECONDS) {
+            return 0.0;
+        }
+        return STEP_VOLTS;
+    }
+
+    @Override
+    public void initialize() {
+        Logger.l("Starting drive characterization");
+        fit.reset();
+        timer.reset();
+        timer.start();
+        lastTime = 0;
+        lastVelocity = drivebase.getAverageDriveVelocity();
+    }
+
+    @Override
+    public void execute() {
+        double t = timer.get();
+        double velocity = drivebase.getAverageDriveVelocity();
+        double dt = t - lastTime;
+
+        if (dt > 0) {
+            double accel = (velocity - lastVelocity) / dt;
+            // Voltage applied over the last period is what produced this change
+            double volts = voltageAt(lastTime);
+            if (volts != 0.0) {
+                fit.add(velocity, accel, volts);
+                logSample[0] = volts;
+                logSample[1] = velocity;
+                logSample[2] = accel;
+                logEntry.append(logSample);
+            }
+        }
+
+        drivebase.setCharacterizationVoltage(voltageAt(t));
+        lastTime = t;
+        lastVelocity = velocity;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return timer.get() > SETTLE_SECONDS + RAMP_SECONDS + REST_SECONDS + STEP_SECONDS;
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        drivebase.setCharacterizationVoltage(Double.NaN);
+        drivebase.stop();
+
+        if (interrupted || !fit.solve()) {
+            Logger.l("Drive characterization did not finish, " + fit.getCount() + " samples");
+            return;
+        }
+
+        Logger.l(String.format("Drive feedforward kS=%.4f kV=%.4f kA=%.4f (r^2 %.3f, %d samples)",
+            fit.getKs(), fit.getKv(), fit.getKa(), fit.getRSquared(), fit.getCount()));
+        SmartDashboard.putNumber("Drive kS", fit.getKs());
+        SmartDashboard.putNumber("Drive kV", fit.getKv());
+        SmartDashboard.putNumber("Drive kA", fit.getKa());
+        drivebase.setDriveFeedforward(fit.getKs(), fit.getKv(), fit.getKa());
+    }
+}
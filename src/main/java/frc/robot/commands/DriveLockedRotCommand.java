@@ -1,19 +1,34 @@
 package frc.robot.commands;
 
+import static frc.robot.Constants.*;
+
 import edu.wpi.first.math.MathUtil;
-import edu.wpi.first.math.Pair;
-import edu.wpi.first.math.controller.PIDController;
-import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.DriverInput;
 import frc.robot.Systems;
 import frc.robot.subsystems.Drivebase;
 import frc.team5431.titan.core.misc.Logger;
 
 import java.util.function.BooleanSupplier;
 import java.util.function.DoubleSupplier;
-import java.util.function.Supplier;
 
+/**
+ * Field-oriented driving with the heading locked to an angle. The heading
+ * follows a trapezoid profile to the target, with the profile velocity as
+ * feedforward, a P term on the position error and damping on the measured
+ * gyro rate. Keeps holding the heading after it gets there, until the
+ * driver rotates manually.
+ *
+ * The profile is planned once and sampled by elapsed time. Sampling it
+ * builds a State, but once it's done the hold runs on the goal alone, so
+ * holding the heading doesn't allocate.
+ */
 public class DriveLockedRotCommand extends CommandBase {
+    // Leave the rest of the module speed for translation
+    private static final double MAX_VELOCITY = Drivebase.MAX_ANGULAR_VELOCITY_RADIANS_PER_SECOND * 0.6;
+
     private final Drivebase m_drivetrainSubsystem;
 
     private final DoubleSupplier m_translationXSupplier;
@@ -22,7 +37,11 @@ public class DriveLockedRotCommand extends CommandBase {
 
     private final BooleanSupplier isManualRotating;
 
-    private PIDController rotController = new PIDController(6.0, 0.0, 0.0);
+    private final TrapezoidProfile.Constraints constraints =
+        new TrapezoidProfile.Constraints(MAX_VELOCITY, HEADING_MAX_ACCELERATION);
+    private TrapezoidProfile profile;
+    private double goalHeading;
+    private final Timer timer = new Timer();
 
     public DriveLockedRotCommand(Systems systems,
                                DoubleSupplier translationXSupplier,
@@ -37,58 +56,72 @@ public class DriveLockedRotCommand extends CommandBase {
 
 
         addRequirements(m_drivetrainSubsystem);
-        setName("DefaultDriveCommand");
+        setName("DriveLockedRotCommand");
     }
 
-    public DriveLockedRotCommand(Systems systems,
-                               Supplier<Pair<Double, Double>> magThetaSupplier,
-                               double gyroAngle,
-                               BooleanSupplier isManualRotating) {
-        this(
-            systems,
-            () -> magThetaSupplier.get().getFirst() * Math.cos(magThetaSupplier.get().getSecond()),
-            () -> magThetaSupplier.get().getFirst() * Math.sin(magThetaSupplier.get().getSecond()),
-            gyroAngle,
-            isManualRotating
-        );
+    /**
+     * Translation from the driver's sticks, ends when they start rotating.
+     */
+    public DriveLockedRotCommand(Systems systems, DriverInput input, double gyroAngle) {
+        this(systems, input::getTranslationX, input::getTranslationY, gyroAngle, input::isRotating);
     }
 
     @Override
     public void initialize() {
         Logger.l("Going to rot " + gyroAngle);
-        rotController = new PIDController(0.12, 0.12, 0.012);
-        rotController.setTolerance(1, 2);
-        rotController.enableContinuousInput(0, 360);
-        rotController.setSetpoint(gyroAngle);
+        // Start the profile from where we are and how fast we're already turning
+        double heading = Math.toRadians(m_drivetrainSubsystem.getGyro().getYawDegrees());
+        double rate = Math.toRadians(m_drivetrainSubsystem.getGyro().getYawRateDegreesPerSecond());
+        // Unwrapped so the profile takes the short way around
+        goalHeading = heading + MathUtil.angleModulus(Math.toRadians(gyroAngle) - heading);
+        profile = new TrapezoidProfile(constraints,
+            new TrapezoidProfile.State(goalHeading, 0.0),
+            new TrapezoidProfile.State(heading, rate));
+        timer.reset();
+        timer.start();
     }
 
     @Override
     public void execute() {
         double x = m_translationXSupplier.getAsDouble();
         double y = m_translationYSupplier.getAsDouble();
-        double rot = rotController.calculate(m_drivetrainSubsystem.getGyroscopeRotation().getDegrees());
+
+        double t = timer.get();
+        double position = goalHeading;
+        double velocity = 0.0;
+        if (!profile.isFinished(t)) {
+            TrapezoidProfile.State setpoint = profile.calculate(t);
+            position = setpoint.position;
+            velocity = setpoint.velocity;
+        }
+
+        // Measured heading unwrapped next to the setpoint
+        double measured = Math.toRadians(m_drivetrainSubsystem.getGyro().getYawDegrees());
+        double heading = position + MathUtil.angleModulus(measured - position);
+        double rate = Math.toRadians(m_drivetrainSubsystem.getGyro().getYawRateDegreesPerSecond());
+
+        double rot = velocity
+            + HEADING_KP * (position - heading)
+            + HEADING_KD * (velocity - rate);
 
         rot = MathUtil.clamp(rot, -Drivebase.MAX_ANGULAR_VELOCITY_RADIANS_PER_SECOND, Drivebase.MAX_ANGULAR_VELOCITY_RADIANS_PER_SECOND);
 
-        // You can use `new ChassisSpeeds(...)` for robot-oriented movement instead of field-oriented movement
-        m_drivetrainSubsystem.drive(
-                ChassisSpeeds.fromFieldRelativeSpeeds(
-                        x,
-                        y,
-                        rot,
-                        m_drivetrainSubsystem.getGyroscopeRotation()
-                )
-        );
+        // Field to robot relative, what fromFieldRelativeSpeeds does without the objects
+        double cos = Math.cos(measured);
+        double sin = Math.sin(measured);
+        m_drivetrainSubsystem.drive(x * cos + y * sin, -x * sin + y * cos, rot);
     }
 
     @Override
     public void end(boolean interrupted) {
-        Logger.l("Default drive ending");
+        Logger.l("Locked rot ending");
+        timer.stop();
         m_drivetrainSubsystem.stop();
     }
 
     @Override
     public boolean isFinished() {
-        return rotController.atSetpoint() || isManualRotating.getAsBoolean();
+        // Holds the heading until the driver takes over
+        return isManualRotating.getAsBoolean();
     }
 }
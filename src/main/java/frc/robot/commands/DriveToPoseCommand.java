@@ -0,0 +1,190 @@
+package frc.robot.commands;
+
+import static frc.robot.Constants.*;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import com.pathplanner.lib.PathPlanner;
+import com.pathplanner.lib.PathPlannerTrajectory;
+import com.pathplanner.lib.PathPlannerTrajectory.PathPlannerState;
+import com.pathplanner.lib.PathPoint;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.Systems;
+import frc.robot.subsystems.Drivebase;
+import frc.robot.util.LoopProfiler;
+import frc.team5431.titan.core.misc.Logger;
+
+/**
+ * Drives to a field pose with a path generated on the spot from the current
+ * estimated pose and measured velocity, limited by PATH_CONSTRAINTS.
+ *
+ * The path is only regenerated when it has to be: the target moved, or we
+ * fell too far behind the path (got pushed, usually). Close enough to the
+ * target, the PIDs just hold position. Finishes once we're at the target.
+ */
+public class DriveToPoseCommand extends CommandBase {
+    // Replan when the target moves this far
+    private static final double REPLAN_TARGET_METERS = 0.1;
+    private static final double REPLAN_TARGET_RADIANS = Math.toRadians(5);
+    // Replan when we're this far off the path
+    private static final double REPLAN_ERROR_METERS = 0.3;
+    private static final double MIN_REPLAN_PERIOD_SECONDS = 0.1;
+    // Closer than this there's no point in a path
+    private static final double MIN_PATH_METERS = 0.15;
+    // Slower than this, the direction of travel is noise
+    private static final double MIN_MOVING_SPEED = 0.1;
+
+    private static final double POSITION_TOLERANCE_METERS = 0.05;
+    private static final double ROTATION_TOLERANCE_RADIANS = Math.toRadians(3);
+
+    private static final int PLAN_SECTION = LoopProfiler.getInstance().register("DriveToPoseCommand.plan");
+
+    private final Drivebase drivebase;
+    private final Supplier<Pose2d> targetSupplier;
+
+    private final PIDController xController = new PIDController(TRANSLATION_PID.kP, TRANSLATION_PID.kI, TRANSLATION_PID.kD);
+    private final PIDController yController = new PIDController(TRANSLATION_PID.kP, TRANSLATION_PID.kI, TRANSLATION_PID.kD);
+    private final PIDController rotationController = new PIDController(ROTATION_PID.kP, ROTATION_PID.kI, ROTATION_PID.kD);
+
+    private final Timer timer = new Timer();
+    // Null while holding position
+    private PathPlannerTrajectory trajectory;
+    private Pose2d plannedTarget;
+    private double lastPlanTime;
+    private int replans;
+
+    /**
+     * @param targetSupplier read every loop, so the target can move
+     */
+    public DriveToPoseCommand(Systems systems, Supplier<Pose2d> targetSupplier) {
+        this.drivebase = systems.getDrivebase();
+        this.targetSupplier = targetSupplier;
+        rotationController.enableContinuousInput(-Math.PI, Math.PI);
+
+        addRequirements(drivebase);
+        setName("DriveToPoseCommand");
+    }
+
+    @Override
+    public void initialize() {
+        xController.reset();
+        yController.reset();
+        rotationController.reset();
+        replans = 0;
+
+        Pose2d target = targetSupplier.get();
+        Logger.l("Driving to " + target);
+        plan(drivebase.getEstimatedPosition(), target, Timer.getFPGATimestamp());
+    }
+
+    private void plan(Pose2d pose, Pose2d target, double now) {
+        long start = System.nanoTime();
+        plannedTarget = target;
+        lastPlanTime = now;
+
+        Translation2d toTarget = target.getTranslation().minus(pose.getTranslation());
+        if (toTarget.getNorm() < MIN_PATH_METERS) {
+            trajectory = null;
+            return;
+        }
+        Rotation2d approach = new Rotation2d(toTarget.getX(), toTarget.getY());
+
+        // Start the path moving the way we already are, at the speed we already are
+        double vx = 0;
+        double vy = 0;
+        Optional<ChassisSpeeds> velocity = drivebase.getFieldVelocityAt(now);
+        if (velocity.isPresent()) {
+            vx = velocity.get().vxMetersPerSecond;
+            vy = velocity.get().vyMetersPerSecond;
+        }
+        double speed = Math.min(Math.hypot(vx, vy), PATH_CONSTRAINTS.maxVelocity);
+        Rotation2d startHeading = speed > MIN_MOVING_SPEED ? new Rotation2d(vx, vy) : approach;
+
+        trajectory = PathPlanner.generatePath(
+            PATH_CONSTRAINTS,
+            new PathPoint(pose.getTranslation(), startHeading, pose.getRotation(), speed),
+            new PathPoint(target.getTranslation(), approach, target.getRotation()));
+        timer.reset();
+        timer.start();
+
+        LoopProfiler.getInstance().record(PLAN_SECTION, start);
+    }
+
+    private boolean needsReplan(Pose2d pose, Pose2d target, PathPlannerState reference) {
+        if (target.getTranslation().getDistance(plannedTarget.getTranslation()) > REPLAN_TARGET_METERS
+                || Math.abs(MathUtil.angleModulus(target.getRotation().getRadians() - plannedTarget.getRotation().getRadians())) > REPLAN_TARGET_RADIANS) {
+            return true;
+        }
+        if (trajectory == null) {
+            // Pushed away while holding position
+            return pose.getTranslation().getDistance(target.getTranslation()) > MIN_PATH_METERS * 2;
+        }
+        return pose.getTranslation().getDistance(reference.poseMeters.getTranslation()) > REPLAN_ERROR_METERS;
+    }
+
+    @Override
+    public void execute() {
+        Pose2d pose = drivebase.getEstimatedPosition();
+        Pose2d target = targetSupplier.get();
+        PathPlannerState reference = trajectory != null ? trajectory.sample(timer.get()) : null;
+
+        double now = Timer.getFPGATimestamp();
+        if (now - lastPlanTime >= MIN_REPLAN_PERIOD_SECONDS && needsReplan(pose, target, reference)) {
+            plan(pose, target, now);
+            replans++;
+            reference = trajectory != null ? trajectory.sample(0) : null;
+        }
+
+        double refX;
+        double refY;
+        double refRotation;
+        double fieldVx = 0;
+        double fieldVy = 0;
+        double omega = 0;
+        if (reference != null) {
+            refX = reference.poseMeters.getX();
+            refY = reference.poseMeters.getY();
+            refRotation = reference.holonomicRotation.getRadians();
+            fieldVx = reference.velocityMetersPerSecond * reference.poseMeters.getRotation().getCos();
+            fieldVy = reference.velocityMetersPerSecond * reference.poseMeters.getRotation().getSin();
+            omega = reference.holonomicAngularVelocityRadPerSec;
+        } else {
+            refX = plannedTarget.getX();
+            refY = plannedTarget.getY();
+            refRotation = plannedTarget.getRotation().getRadians();
+        }
+        fieldVx += xController.calculate(pose.getX(), refX);
+        fieldVy += yController.calculate(pose.getY(), refY);
+        omega += rotationController.calculate(pose.getRotation().getRadians(), refRotation);
+
+        // Field to robot relative
+        double cos = pose.getRotation().getCos();
+        double sin = pose.getRotation().getSin();
+        drivebase.driveRaw(fieldVx * cos + fieldVy * sin, -fieldVx * sin + fieldVy * cos, omega);
+    }
+
+    @Override
+    public boolean isFinished() {
+        Pose2d pose = drivebase.getEstimatedPosition();
+        boolean pathDone = trajectory == null || timer.hasElapsed(trajectory.getTotalTimeSeconds());
+        return pathDone
+            && pose.getTranslation().getDistance(plannedTarget.getTranslation()) < POSITION_TOLERANCE_METERS
+            && Math.abs(MathUtil.angleModulus(pose.getRotation().getRadians() - plannedTarget.getRotation().getRadians())) < ROTATION_TOLERANCE_RADIANS;
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        Logger.l("Drive to pose " + (interrupted ? "interrupted" : "arrived") + ", " + replans + " replans");
+        timer.stop();
+        drivebase.stop();
+    }
+}
@@ -0,0 +1,124 @@
+package frc.robot.commands;
+
+import static frc.robot.Constants.*;
+
+import java.util.ArrayList;
+
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+import frc.robot.subsystems.Drivebase;
+import frc.robot.util.CachedTrajectory;
+
+/**
+ * Follows a {@link CachedTrajectory} with {@link Drivebase#driveRaw(double, double, double)},
+ * using the path velocity as feedforward plus TRANSLATION_PID and
+ * ROTATION_PID on the pose error.
+ *
+ * Event marker commands run inside this command, the way PathPlanner's
+ * FollowPathWithEvents does it: each starts as the path passes its marker,
+ * and any still running are interrupted when the path ends or the auto is
+ * cancelled. Their requirements become this command's.
+ */
+public class FollowCachedTrajectoryCommand extends CommandBase {
+    private final Drivebase drivebase;
+    private final CachedTrajectory trajectory;
+    private final boolean red;
+    private final Command[][] markerCommands;
+    private final ArrayList<Command> running = new ArrayList<>();
+
+    private final PIDController xController = new PIDController(TRANSLATION_PID.kP, TRANSLATION_PID.kI, TRANSLATION_PID.kD);
+    private final PIDController yController = new PIDController(TRANSLATION_PID.kP, TRANSLATION_PID.kI, TRANSLATION_PID.kD);
+    private final PIDController rotationController = new PIDController(ROTATION_PID.kP, ROTATION_PID.kI, ROTATION_PID.kD);
+
+    private final Timer timer = new Timer();
+    private final double[] state = new double[CachedTrajectory.WIDTH];
+    private int nextMarker;
+
+    /**
+     * @param red mirror the blue alliance path for the red alliance
+     * @param markerCommands commands for each of the trajectory's markers,
+     *     not used anywhere else
+     */
+    public FollowCachedTrajectoryCommand(Drivebase drivebase, CachedTrajectory trajectory, boolean red, Command[][] markerCommands) {
+        this.drivebase = drivebase;
+        this.trajectory = trajectory;
+        this.red = red;
+        this.markerCommands = markerCommands;
+        rotationController.enableContinuousInput(-Math.PI, Math.PI);
+
+        addRequirements(drivebase);
+        for (Command[] commands : markerCommands) {
+            for (Command command : commands) {
+                addRequirements(command.getRequirements().toArray(new Subsystem[0]));
+            }
+        }
+        setName("FollowCachedTrajectoryCommand");
+    }
+
+    @Override
+    public void initialize() {
+        xController.reset();
+        yController.reset();
+        rotationController.reset();
+        nextMarker = 0;
+        timer.reset();
+        timer.start();
+    }
+
+    @Override
+    public void execute() {
+        double t = timer.get();
+        trajectory.sample(t, red, state);
+
+        Pose2d pose = drivebase.getEstimatedPosition();
+        double velocity = state[CachedTrajectory.VELOCITY];
+        double heading = state[CachedTrajectory.HEADING];
+        double fieldVx = velocity * Math.cos(heading) + xController.calculate(pose.getX(), state[CachedTrajectory.X]);
+        double fieldVy = velocity * Math.sin(heading) + yController.calculate(pose.getY(), state[CachedTrajectory.Y]);
+        double omega = state[CachedTrajectory.ROTATION_RATE]
+            + rotationController.calculate(pose.getRotation().getRadians(), state[CachedTrajectory.ROTATION]);
+
+        // Field to robot relative
+        double cos = pose.getRotation().getCos();
+        double sin = pose.getRotation().getSin();
+        drivebase.driveRaw(fieldVx * cos + fieldVy * sin, -fieldVx * sin + fieldVy * cos, omega);
+
+        for (int i = running.size() - 1; i >= 0; i--) {
+            Command command = running.get(i);
+            command.execute();
+            if (command.isFinished()) {
+                command.end(false);
+                running.remove(i);
+            }
+        }
+
+        while (nextMarker < trajectory.getMarkerCount() && trajectory.getMarkerTime(nextMarker) <= t) {
+            for (Command command : markerCommands[nextMarker]) {
+                if (!running.contains(command)) {
+                    command.initialize();
+                    running.add(command);
+                }
+            }
+            nextMarker++;
+        }
+    }
+
+    @Override
+    public boolean isFinished() {
+        return timer.hasElapsed(trajectory.getTotalTimeSeconds());
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        timer.stop();
+        drivebase.stop();
+        for (Command command : running) {
+            command.end(true);
+        }
+        running.clear();
+    }
+}
@@ -0,0 +1,32 @@
+package frc.robot.sim;
+
+import edu.wpi.first.wpilibj.simulation.XboxControllerSim;
+
+/**
+ * A scripted driver: a name, how long to run, and what the controller
+ * looks like at each point in time.
+ */
+public class Scenario {
+    public interface InputScript {
+        /**
+         * Sets the controller for time {@code t} seconds into the scenario.
+         * Axes and buttons are reset to neutral before every call.
+         */
+        void apply(double t, XboxControllerSim controller);
+    }
+
+    public final String name;
+    public final double durationSeconds;
+    public final InputScript script;
+
+    public Scenario(String name, double durationSeconds, InputScript script) {
+        this.name = name;
+        this.durationSeconds = durationSeconds;
+        this.script = script;
+    }
+
+    /** Holds a button for {@code seconds} starting at {@code start}. */
+    public static boolean pressed(double t, double start, double seconds) {
+        return t >= start && t < start + seconds;
+    }
+}
@@ -0,0 +1,265 @@
+package frc.robot.sim;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj.simulation.XboxControllerSim;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.RobotContainer;
+import frc.robot.Systems;
+import frc.robot.subsystems.Drivebase;
+import frc.robot.util.TimingHistogram;
+
+/**
+ * Runs the real RobotContainer bindings, CommandScheduler, Drivebase and
+ * pose estimator against simulated modules on a paused HAL clock, stepping
+ * as fast as the CPU allows. Each scenario drives the controller from a
+ * script and writes a trajectory trace.
+ *
+ * Afterwards a field-relative strafe while spinning is run with first- and
+ * second-order kinematics, and how far each strays off the straight line
+ * is printed.
+ *
+ * ./gradlew simHarness [-PsimOut=build/sim]
+ */
+public class SimHarness {
+    private static final double DT = TimedRobot.kDefaultPeriod;
+    private static final double SETTLE_SECONDS = 1.0;
+
+    public static class Result {
+        public final Scenario scenario;
+        public final List<double[]> trace;
+        public final Pose2d finalPose;
+        public final double maxSpeed;
+        public final double wallSeconds;
+        public final TimingHistogram stepTimes;
+
+        Result(Scenario scenario, List<double[]> trace, Pose2d finalPose, double maxSpeed,
+                double wallSeconds, TimingHistogram stepTimes) {
+            this.scenario = scenario;
+            this.trace = trace;
+            this.finalPose = finalPose;
+            this.maxSpeed = maxSpeed;
+            this.wallSeconds = wallSeconds;
+            this.stepTimes = stepTimes;
+        }
+
+        public double getSpeedup() {
+            return scenario.durationSeconds / wallSeconds;
+        }
+    }
+
+    private final Drivebase drivebase;
+    private final RobotContainer container;
+    private final XboxControllerSim controller = new XboxControllerSim(0);
+
+    public SimHarness() {
+        HAL.initialize(500, 0);
+        SimHooks.pauseTiming();
+        DriverStation.silenceJoystickConnectionWarning(true);
+
+        drivebase = Drivebase.createHeadless();
+        container = new RobotContainer(new Systems(drivebase));
+    }
+
+    public Drivebase getDrivebase() {
+        return drivebase;
+    }
+
+    public RobotContainer getContainer() {
+        return container;
+    }
+
+    private void neutral() {
+        controller.setLeftX(0);
+        controller.setLeftY(0);
+        controller.setRightX(0);
+        controller.setRightY(0);
+        controller.setLeftTriggerAxis(0);
+        controller.setRightTriggerAxis(0);
+        controller.setAButton(false);
+        controller.setBButton(false);
+        controller.setXButton(false);
+        controller.setYButton(false);
+        controller.setBackButton(false);
+        controller.setStartButton(false);
+        controller.setLeftBumper(false);
+        controller.setRightBumper(false);
+        controller.setPOV(-1);
+    }
+
+    // One robot loop, the same order TimedRobot runs it in
+    private void step() {
+        controller.notifyNewData();
+        DriverStationSim.notifyNewData();
+        DriverStation.refreshData();
+        CommandScheduler.getInstance().run();
+        drivebase.simulate(DT);
+        SimHooks.stepTiming(DT);
+    }
+
+    private void reset() {
+        CommandScheduler.getInstance().cancelAll();
+        neutral();
+        DriverStationSim.setEnabled(false);
+        for (double t = 0; t < SETTLE_SECONDS; t += DT) {
+            step();
+        }
+        drivebase.zeroGyroscope();
+        drivebase.resetOdometry(new Pose2d());
+    }
+
+    public Result run(Scenario scenario) {
+        reset();
+        DriverStationSim.setAutonomous(false);
+        DriverStationSim.setEnabled(true);
+
+        List<double[]> trace = new ArrayList<>();
+        TimingHistogram stepTimes = new TimingHistogram();
+        double maxSpeed = 0;
+        Pose2d pose = drivebase.getEstimatedPosition();
+
+        long wallStart = System.nanoTime();
+        int steps = (int) Math.round(scenario.durationSeconds / DT);
+        for (int i = 0; i < steps; i++) {
+            double t = i * DT;
+            neutral();
+            scenario.script.apply(t, controller);
+
+            long stepStart = System.nanoTime();
+            step();
+            stepTimes.record(System.nanoTime() - stepStart);
+
+            Pose2d next = drivebase.getEstimatedPosition();
+            double speed = next.getTranslation().getDistance(pose.getTranslation()) / DT;
+            maxSpeed = Math.max(maxSpeed, speed);
+            pose = next;
+            trace.add(new double[] { t + DT, pose.getX(), pose.getY(), pose.getRotation().getDegrees(), speed });
+        }
+        double wallSeconds = (System.nanoTime() - wallStart) / 1e9;
+
+        DriverStationSim.setEnabled(false);
+        return new Result(scenario, trace, pose, maxSpeed, wallSeconds, stepTimes);
+    }
+
+    public static void writeTrace(Result result, File dir) throws IOException {
+        dir.mkdirs();
+        try (PrintStream out = new PrintStream(new File(dir, result.scenario.name + ".csv"))) {
+            out.println("time,x,y,heading,speed");
+            for (double[] row : result.trace) {
+                out.printf("%.3f,%.4f,%.4f,%.3f,%.4f%n", row[0], row[1], row[2], row[3], row[4]);
+            }
+        }
+    }
+
+    public static List<Scenario> defaultScenarios() {
+        List<Scenario> scenarios = new ArrayList<>();
+        scenarios.add(new Scenario("idle", 3, (t, c) -> {}));
+        scenarios.add(new Scenario("full-forward", 3, (t, c) -> c.setLeftY(-1)));
+        scenarios.add(new Scenario("strafe-and-spin", 4, (t, c) -> {
+            c.setLeftX(-0.8);
+            c.setRightX(-0.6);
+        }));
+        scenarios.add(new Scenario("pov-nudges", 4, (t, c) -> {
+            int[] povs = { 0, 90, 180, 270 };
+            c.setPOV(povs[Math.min((int) t, 3)]);
+        }));
+        scenarios.add(new Scenario("lock-a-b-x-y", 8, (t, c) -> {
+            c.setLeftY(-0.5);
+            c.setAButton(Scenario.pressed(t, 0.0, 0.1));
+            c.setBButton(Scenario.pressed(t, 2.0, 0.1));
+            c.setXButton(Scenario.pressed(t, 4.0, 0.1));
+            c.setYButton(Scenario.pressed(t, 6.0, 0.1));
+        }));
+        scenarios.add(new Scenario("lock-then-manual-override", 4, (t, c) -> {
+            c.setYButton(Scenario.pressed(t, 0.0, 0.1));
+            if (t > 2.0) {
+                c.setRightX(0.7);
+            }
+        }));
+        return scenarios;
+    }
+
+    /**
+     * Strafes left along field Y while spinning, with no X on the stick, so
+     * anything in X is skew from translating while rotating.
+     */
+    public static Scenario skewScenario(String name) {
+        return new Scenario(name, 4, (t, c) -> {
+            c.setLeftX(-0.6);
+            c.setRightX(-0.8);
+        });
+    }
+
+    /**
+     * Runs {@link #skewScenario} with first-order and then second-order
+     * kinematics, leaving second-order on.
+     *
+     * @return the first-order result, then the second-order one
+     */
+    public Result[] runSkewComparison() {
+        Result[] results = new Result[2];
+        for (int i = 0; i < 2; i++) {
+            boolean secondOrder = i == 1;
+            drivebase.setSecondOrderKinematics(secondOrder);
+            results[i] = run(skewScenario(secondOrder ? "skew-second-order" : "skew-first-order"));
+        }
+        drivebase.setSecondOrderKinematics(true);
+        return results;
+    }
+
+    /** Furthest the trace got from the X it started at, meters */
+    public static double maxCrossTrack(Result result) {
+        double max = 0;
+        for (double[] row : result.trace) {
+            max = Math.max(max, Math.abs(row[1]));
+        }
+        return max;
+    }
+
+    public static void main(String... args) throws IOException {
+        File outDir = new File(args.length > 0 ? args[0] : "build/sim");
+        SimHarness harness = new SimHarness();
+
+        double simTotal = 0;
+        double wallTotal = 0;
+        for (Scenario scenario : defaultScenarios()) {
+            Result result = harness.run(scenario);
+            writeTrace(result, outDir);
+            simTotal += scenario.durationSeconds;
+            wallTotal += result.wallSeconds;
+
+            System.out.printf("%-28s end (%.2f, %.2f) %.1f deg  max %.2f m/s  %.0fx real time  step p50 %.3f ms p99 %.3f ms max %.3f ms%n",
+                scenario.name,
+                result.finalPose.getX(), result.finalPose.getY(), result.finalPose.getRotation().getDegrees(),
+                result.maxSpeed, result.getSpeedup(),
+                result.stepTimes.getPercentileNanos(0.5) / 1e6,
+                result.stepTimes.getPercentileNanos(0.99) / 1e6,
+                result.stepTimes.getMaxNanos() / 1e6);
+        }
+        System.out.printf("%.1f s simulated in %.2f s (%.0fx), traces in %s%n",
+            simTotal, wallTotal, simTotal / wallTotal, outDir.getPath());
+
+        Result[] skew = harness.runSkewComparison();
+        double[] drift = new double[2];
+        for (int i = 0; i < 2; i++) {
+            Result result = skew[i];
+            writeTrace(result, outDir);
+            drift[i] = maxCrossTrack(result);
+            System.out.printf("%-28s off the line by up to %.3f m, end (%.2f, %.2f)%n",
+                result.scenario.name, drift[i], result.finalPose.getX(), result.finalPose.getY());
+        }
+        System.out.printf("Second-order kinematics cut strafe-while-spinning drift by %.0f%%%n",
+            drift[0] > 0 ? (1.0 - drift[1] / drift[0]) * 100.0 : 0.0);
+        System.exit(0);
+    }
+}
@@ -2,35 +2,67 @@ package frc.robot.subsystems;
 
 import com.ctre.phoenix.motorcontrol.can.WPI_TalonFX;
 import com.ctre.phoenix.sensors.WPI_Pigeon2;
-import com.ctre.phoenix.sensors.Pigeon2.AxisDirection;
 import com.swervedrivespecialties.swervelib.MkModuleConfiguration;
 import com.swervedrivespecialties.swervelib.MkSwerveModuleBuilder;
 import com.swervedrivespecialties.swervelib.MotorType;
 import com.swervedrivespecialties.swervelib.SdsModuleConfigurations;
-import com.swervedrivespecialties.swervelib.SwerveModule;
 
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.controller.SimpleMotorFeedforward;
 import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
-import edu.wpi.first.math.filter.SlewRateLimiter;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
-import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.BatterySim;
+import edu.wpi.first.wpilibj.simulation.RoboRioSim;
 import edu.wpi.first.wpilibj.shuffleboard.Shuffleboard;
 import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardTab;
 import edu.wpi.first.wpilibj.smartdashboard.Field2d;
+import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.subsystems.io.GyroIO;
+import frc.robot.subsystems.io.GyroIOPigeon2;
+import frc.robot.subsystems.io.GyroIOSim;
+import frc.robot.subsystems.io.SwerveModuleIO;
+import frc.robot.subsystems.io.SwerveModuleIOReal;
+import frc.robot.subsystems.io.SwerveModuleIOSim;
+import frc.robot.subsystems.io.SwerveModuleOutput;
+import frc.robot.util.CanBusManager;
+import frc.robot.util.InputStage;
+import frc.robot.util.InputStages;
+import frc.robot.util.OdometryFrontEnd;
+import frc.robot.util.PoseHistory;
+import frc.robot.util.PowerManager;
+import frc.robot.util.SlipEstimator;
+import frc.robot.util.SwerveStateBuffer;
+import frc.robot.util.Telemetry;
 
 import static frc.robot.Constants.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
-public class Drivebase extends SubsystemBase {
+public class Drivebase extends ProfiledSubsystem {
     
+    public enum DriveMode {
+        // Speed scaled straight to voltage
+        OPEN_LOOP,
+        // TalonFX velocity loop plus kS/kV/kA feedforward
+        CLOSED_LOOP
+    }
    
     public static final double MAX_VOLTAGE = 12.0;
 
@@ -47,7 +79,10 @@ public class Drivebase extends SubsystemBase {
     // Max input acceleration (ChassisSpeeds radians per second per second) for rotational movement
     public static final double SLEW_RATE_LIMIT_ROTATION = MAX_ANGULAR_VELOCITY_RADIANS_PER_SECOND * 10;
 
-    public final SwerveDriveKinematics m_kinematics = new SwerveDriveKinematics(
+    // How far back getPoseAt() can look
+    public static final double POSE_HISTORY_SECONDS = 1.5;
+
+    public static final Translation2d[] MODULE_LOCATIONS = new Translation2d[] {
                     // Front left
                     new Translation2d(DRIVETRAIN_TRACKWIDTH_METERS / 2.0, DRIVETRAIN_WHEELBASE_METERS / 2.0),
                     // Front right
@@ -56,167 +91,840 @@ public class Drivebase extends SubsystemBase {
                     new Translation2d(-DRIVETRAIN_TRACKWIDTH_METERS / 2.0, DRIVETRAIN_WHEELBASE_METERS / 2.0),
                     // Back right
                     new Translation2d(-DRIVETRAIN_TRACKWIDTH_METERS / 2.0, -DRIVETRAIN_WHEELBASE_METERS / 2.0)
-    );
+    };
+
+    public final SwerveDriveKinematics m_kinematics = new SwerveDriveKinematics(MODULE_LOCATIONS);
     
-    public final WPI_Pigeon2 pigeon2;
+    public final GyroIO gyro;
 
     public final SwerveDrivePoseEstimator poseEstimator;
 
-    // These are our modules. We initialize them in the constructor.
-    private final SwerveModule m_frontLeftModule;
-    private final SwerveModule m_frontRightModule;
-    private final SwerveModule m_backLeftModule;
-    private final SwerveModule m_backRightModule;
+    // Front left, front right, back left, back right
+    private final SwerveModuleIO[] m_modules;
+    // Every setpoint goes through these, so unchanged ones aren't re-sent
+    private final SwerveModuleOutput[] m_outputs;
+
+    // Owned by the drivebase and mutated in place, never handed out
+    private final ChassisSpeeds m_chassisSpeeds = new ChassisSpeeds(0.0, 0.0, 0.0);
+
+    // Reused every loop so periodic() doesn't allocate
+    private final SwerveStateBuffer m_states;
+    // Discretized kinematics and steer rate feedforward, off only to compare against first-order
+    private boolean m_secondOrder = true;
+    private final SwerveModulePosition[] m_positions = new SwerveModulePosition[] {
+        new SwerveModulePosition(), new SwerveModulePosition(), new SwerveModulePosition(), new SwerveModulePosition()
+    };
+    private final double[] m_moduleAngles = new double[] { Double.NaN, Double.NaN, Double.NaN, Double.NaN };
+    private double m_lastYaw = Double.NaN;
+    private Rotation2d m_gyroRotation = new Rotation2d();
+
+    private final OdometryThread m_odometryThread;
+    // Null in simulation
+    private final CanBusManager m_canBus;
+    private final boolean m_odometryThreadRunning;
+    private final OdometryThread.Sample m_odometrySample = new OdometryThread.Sample(4);
+    private double m_lastOdometryYaw = Double.NaN;
+    private Rotation2d m_odometryRotation = new Rotation2d();
+    // False until the estimator has a sample since construction or the last reset
+    private boolean m_estimatorFed = false;
+
+    private final PoseHistory m_poseHistory = new PoseHistory((int) Math.ceil(POSE_HISTORY_SECONDS * ODOMETRY_FREQUENCY_HZ));
+    // Slip and collision checks between the odometry samples and the pose estimator
+    private final OdometryFrontEnd m_frontEnd = new OdometryFrontEnd(MODULE_LOCATIONS);
+    private final double[] m_rawDistances = new double[4];
+    private final Matrix<N3, N1> m_visionStdDevs = new Matrix<>(Nat.N3(), Nat.N1());
+    private final double[] m_sampleChassisSpeeds = new double[3];
+    private final double[] m_historySample = new double[PoseHistory.WIDTH];
+
+    private final SendableChooser<DriveMode> m_driveModeChooser = new SendableChooser<>();
+    private SimpleMotorFeedforward m_driveFeedforward = new SimpleMotorFeedforward(DRIVE_KS, DRIVE_KV, DRIVE_KA);
+    private final double[] m_lastTargetSpeeds = new double[4];
+    private double m_trackingError = 0;
+    // Set while characterizing: every module points forward and gets this voltage
+    private double m_characterizationVoltage = Double.NaN;
+    // Per module while characterizing: 1 pointing forward, -1 pointing backward and driven in reverse
+    private final double[] m_characterizationSigns = new double[] { 1.0, 1.0, 1.0, 1.0 };
+
+    // Limits the length of the acceleration, so diagonals aren't faster than straight lines
+    private final InputStages.RateLimiter m_driveLimiter =
+        new InputStages.RateLimiter(SLEW_RATE_LIMIT_TRANSLATION, Double.POSITIVE_INFINITY, SLEW_RATE_LIMIT_ROTATION);
+    private final double[] m_driveInput = new double[3];
+    private double m_lastDriveTime = Double.NaN;
+
+    // X stance: every wheel points at the center
+    private final double[] m_stanceAngles = new double[4];
+    // Wheel distances to hold, from when the stance started
+    private final double[] m_stanceDistances = new double[4];
+    private boolean m_stanceRequested = false;
+    private boolean m_autoStance = true;
+    private boolean m_stance = false;
+    private double m_stoppedSince = Double.NaN;
+
+    // Drive current limits and slew rate against battery sag
+    private final PowerManager m_power;
+
+    private final SlipEstimator m_slip = m_frontEnd.getSlipEstimator();
+    private boolean m_tractionControl = true;
+    private final double[] m_moduleSlip = new double[4];
 
-    private ChassisSpeeds m_chassisSpeeds = new ChassisSpeeds(0.0, 0.0, 0.0);
+    public final Field2d field2d;
 
-    private final SlewRateLimiter filter_vx;
-    private final SlewRateLimiter filter_vy;
-    private final SlewRateLimiter filter_or;
+    private final DrivebaseLog m_log = new DrivebaseLog(4);
 
-    public final Field2d field2d;
 
+    private String m_formattedPose = "";
+    private double m_formattedX = Double.NaN;
+    private double m_formattedY = Double.NaN;
+    private double m_formattedDegrees = Double.NaN;
+
+    /**
+     * Real CTRE hardware on the robot, physics-simulated modules otherwise.
+     */
     public Drivebase() {
-        pigeon2 = new WPI_Pigeon2(ID_PIGEON2, CANBUS_DRIVETRAIN);
-        pigeon2.configMountPose(AxisDirection.NegativeX, AxisDirection.PositiveZ);
+        this(RobotBase.isReal() ? createRealModules() : createSimModules());
+    }
+
+    private Drivebase(SwerveModuleIO[] modules) {
+        this(RobotBase.isReal() ? new GyroIOPigeon2(ID_PIGEON2, CANBUS_DRIVETRAIN) : new GyroIOSim(modules, MODULE_LOCATIONS), modules);
+    }
+
+    public Drivebase(GyroIO gyro, SwerveModuleIO[] modules) {
+        this(gyro, modules, true);
+    }
+
+    /**
+     * @param odometryThread false to sample odometry once per periodic() on
+     *     the calling thread instead, e.g. for stepping on a virtual clock
+     */
+    public Drivebase(GyroIO gyro, SwerveModuleIO[] modules, boolean odometryThread) {
+        this.gyro = gyro;
+        m_modules = modules;
+        m_outputs = new SwerveModuleOutput[modules.length];
+        for (int i = 0; i < modules.length; i++) {
+            m_outputs[i] = new SwerveModuleOutput(modules[i]);
+        }
+        m_states = new SwerveStateBuffer(MODULE_LOCATIONS);
+        m_power = new PowerManager(modules);
+        m_driveLimiter.withAccelerationScale(m_power::getSlewScale);
+        for (int i = 0; i < modules.length; i++) {
+            m_stanceAngles[i] = Math.atan2(MODULE_LOCATIONS[i].getY(), MODULE_LOCATIONS[i].getX());
+        }
+        syncOdometryDistances();
+
+        poseEstimator = new SwerveDrivePoseEstimator(m_kinematics, getGyroscopeRotation(), getPositions(), new Pose2d());
+
+        m_canBus = createCanBusManager();
+        // No faster than the frames it reads come in
+        double odometryHz = m_canBus != null
+            ? Math.min(ODOMETRY_FREQUENCY_HZ, 1000.0 / m_canBus.getFastPeriodMs())
+            : ODOMETRY_FREQUENCY_HZ;
+        m_odometryThread = new OdometryThread(m_modules, gyro, odometryHz);
+        m_odometryThreadRunning = odometryThread;
+        if (odometryThread) {
+            m_odometryThread.start();
+        }
+        
+
+        m_driveModeChooser.setDefaultOption("Open loop", DriveMode.OPEN_LOOP);
+        m_driveModeChooser.addOption("Closed loop", DriveMode.CLOSED_LOOP);
+
+        field2d = new Field2d();
+
+        Telemetry telemetry = Telemetry.getInstance();
+        telemetry.addDouble("Pitch", gyro::getPitchDegrees, 0.1, 0.1);
+        telemetry.addDouble("DT X spd", () -> m_chassisSpeeds.vxMetersPerSecond);
+        telemetry.addDouble("DT Y spd", () -> m_chassisSpeeds.vyMetersPerSecond);
+        telemetry.addDouble("DT . spd", () -> Math.hypot(m_chassisSpeeds.vxMetersPerSecond, m_chassisSpeeds.vyMetersPerSecond));
+        telemetry.addDouble("DT O rot", () -> m_chassisSpeeds.omegaRadiansPerSecond);
+        telemetry.addDouble("Odom Hz", m_odometryThread::getAchievedHz, 1.0, 1.0);
+        telemetry.addDouble("Odom jitter ms", () -> m_odometryThread.getJitterSeconds() * 1000.0, 0.01, 1.0);
+        telemetry.addDouble("Odom fresh Hz", m_odometryThread::getFreshSampleHz, 1.0, 1.0);
+        telemetry.addDouble("Odom data age ms", () -> m_odometryThread.getDataAgeSeconds() * 1000.0, 0.1, 1.0);
+        telemetry.addDouble("Odom max age ms", () -> m_odometryThread.getMaxDataAgeSeconds() * 1000.0, 0.1, 1.0);
+        if (m_canBus != null) {
+            telemetry.addDouble("CAN util", () -> m_canBus.getUtilization() * 100.0, 0.5, 1.0);
+        }
+        telemetry.addDouble("DT tracking err", () -> m_trackingError, 0.01, 0.1);
+        telemetry.addDouble("DT drive limit A", m_power::getDriveLimit, 0.5, 0.1);
+        telemetry.addDouble("DT current A", m_power::getTotalCurrent, 1.0, 0.1);
+        telemetry.addDouble("DT skipped sets", this::getSuppressedSetpoints, 1.0, 1.0);
+        telemetry.addDouble("DT stance", () -> m_stance ? 1.0 : 0.0, 0.5, 0.1);
+        telemetry.addDouble("DT slipping", m_slip::getSlippingCount, 0.5, 0.1);
+        telemetry.addDouble("Odom std scale", () -> getOdometryStdDevScale(Timer.getFPGATimestamp()), 0.1, 0.1);
+    }
+
+    /**
+     * Puts the drive mode chooser, gyro, pose and field on the dashboard.
+     * Call once: Shuffleboard won't take the same title twice, so a second
+     * Drivebase (tests, the SimHarness) can't do this in its constructor.
+     */
+    public void addDashboard() {
+        SmartDashboard.putData("Drive mode", m_driveModeChooser);
+
+        if (gyro instanceof GyroIOPigeon2) {
+            SmartDashboard.putData("Gyro", ((GyroIOPigeon2) gyro).getPigeon());
+        }
+
+        ShuffleboardTab visionTab = Shuffleboard.getTab("Vision");
 
+        visionTab.addString("Pose", this::getFormattedPose)
+            .withPosition(0, 0)
+            .withSize(2, 0);
+        visionTab.add("Field", field2d)
+            .withPosition(2, 0)
+            .withSize(6,4);
+
+        Telemetry.getInstance().addAction(() -> field2d.setRobotPose(getEstimatedPosition()), 0.05);
+    }
+
+    private static SwerveModuleIO[] createRealModules() {
         MkModuleConfiguration moduleConfig = MkModuleConfiguration.getDefaultSteerFalcon500();
-        moduleConfig.setDriveCurrentLimit(40.0);
-        moduleConfig.setSteerCurrentLimit(30.0);
+        // Drive limits only start here, PowerManager lowers them as the battery sags
+        moduleConfig.setDriveCurrentLimit(POWER_DRIVE_MAX_CURRENT);
+        moduleConfig.setSteerCurrentLimit(STEER_CURRENT_LIMIT);
 
-        m_frontLeftModule = new MkSwerveModuleBuilder(moduleConfig)
+        return new SwerveModuleIO[] {
+            new SwerveModuleIOReal(new MkSwerveModuleBuilder(moduleConfig)
                 .withGearRatio(SdsModuleConfigurations.MK4_L2)
                 .withDriveMotor(MotorType.FALCON, FRONT_LEFT_MODULE_DRIVE_MOTOR, CANBUS_DRIVETRAIN)
                 .withSteerMotor(MotorType.FALCON, FRONT_LEFT_MODULE_STEER_MOTOR, CANBUS_DRIVETRAIN)
                 .withSteerEncoderPort(FRONT_LEFT_MODULE_STEER_ENCODER, CANBUS_DRIVETRAIN)
                 .withSteerOffset(FRONT_LEFT_MODULE_STEER_OFFSET)
-                .build();
+                .build(), SdsModuleConfigurations.MK4_L2),
 
-        m_frontRightModule = new MkSwerveModuleBuilder(moduleConfig)
+            new SwerveModuleIOReal(new MkSwerveModuleBuilder(moduleConfig)
                 .withGearRatio(SdsModuleConfigurations.MK4_L2)
                 .withDriveMotor(MotorType.FALCON, FRONT_RIGHT_MODULE_DRIVE_MOTOR, CANBUS_DRIVETRAIN)
                 .withSteerMotor(MotorType.FALCON, FRONT_RIGHT_MODULE_STEER_MOTOR, CANBUS_DRIVETRAIN)
                 .withSteerEncoderPort(FRONT_RIGHT_MODULE_STEER_ENCODER, CANBUS_DRIVETRAIN)
                 .withSteerOffset(FRONT_RIGHT_MODULE_STEER_OFFSET)
-                .build();
+                .build(), SdsModuleConfigurations.MK4_L2),
 
-        m_backLeftModule = new MkSwerveModuleBuilder(moduleConfig)
+            new SwerveModuleIOReal(new MkSwerveModuleBuilder(moduleConfig)
                 .withGearRatio(SdsModuleConfigurations.MK4_L2)
                 .withDriveMotor(MotorType.FALCON, BACK_LEFT_MODULE_DRIVE_MOTOR, CANBUS_DRIVETRAIN)
                 .withSteerMotor(MotorType.FALCON, BACK_LEFT_MODULE_STEER_MOTOR, CANBUS_DRIVETRAIN)
                 .withSteerEncoderPort(BACK_LEFT_MODULE_STEER_ENCODER, CANBUS_DRIVETRAIN)
                 .withSteerOffset(BACK_LEFT_MODULE_STEER_OFFSET)
-                .build();
+                .build(), SdsModuleConfigurations.MK4_L2),
 
-        m_backRightModule = new MkSwerveModuleBuilder(moduleConfig)
+            new SwerveModuleIOReal(new MkSwerveModuleBuilder(moduleConfig)
                 .withGearRatio(SdsModuleConfigurations.MK4_L2)
                 .withDriveMotor(MotorType.FALCON, BACK_RIGHT_MODULE_DRIVE_MOTOR, CANBUS_DRIVETRAIN)
                 .withSteerMotor(MotorType.FALCON, BACK_RIGHT_MODULE_STEER_MOTOR, CANBUS_DRIVETRAIN)
                 .withSteerEncoderPort(BACK_RIGHT_MODULE_STEER_ENCODER, CANBUS_DRIVETRAIN)
                 .withSteerOffset(BACK_RIGHT_MODULE_STEER_OFFSET)
-                .build();
-
-        poseEstimator = new SwerveDrivePoseEstimator(m_kinematics, getGyroscopeRotation(), getPositions(), new Pose2d());
-        
-
-        filter_vx = new SlewRateLimiter(SLEW_RATE_LIMIT_TRANSLATION);
-        filter_vy = new SlewRateLimiter(SLEW_RATE_LIMIT_TRANSLATION);
-        filter_or = new SlewRateLimiter(SLEW_RATE_LIMIT_ROTATION);
+                .build(), SdsModuleConfigurations.MK4_L2)
+        };
+    }
 
-        SmartDashboard.putData("Gyro", pigeon2);
+    /**
+     * Null unless there's real hardware to manage.
+     */
+    private CanBusManager createCanBusManager() {
+        CanBusManager manager = new CanBusManager(CANBUS_DRIVETRAIN, ODOMETRY_FREQUENCY_HZ);
+        boolean any = false;
+        for (int i = 0; i < m_modules.length; i++) {
+            if (m_modules[i] instanceof SwerveModuleIOReal) {
+                SwerveModuleIOReal module = (SwerveModuleIOReal) m_modules[i];
+                // A reset Talon dropped its setpoint, so the next one can't be skipped as unchanged
+                SwerveModuleOutput output = m_outputs[i];
+                manager.addTalon(module.getDriveMotor(), CanBusManager.Role.DRIVE, output::invalidate);
+                manager.addTalon(module.getSteerMotor(), CanBusManager.Role.STEER, output::invalidate);
+                any = true;
+            }
+        }
+        if (gyro instanceof GyroIOPigeon2) {
+            WPI_Pigeon2 pigeon = ((GyroIOPigeon2) gyro).getPigeon();
+            manager.setPigeon(pigeon);
+            any = true;
+        }
+        return any ? manager : null;
+    }
 
-        ShuffleboardTab visionTab = Shuffleboard.getTab("Vision");
+    public CanBusManager getCanBusManager() {
+        return m_canBus;
+    }
 
-        field2d = new Field2d();
+    /**
+     * Simulated modules and gyro, with odometry sampled in periodic() rather
+     * than on a Notifier. For the SimHarness, tests and benchmarks, which
+     * step the loop themselves.
+     */
+    public static Drivebase createHeadless() {
+        SwerveModuleIO[] modules = createSimModules();
+        return new Drivebase(new GyroIOSim(modules, MODULE_LOCATIONS), modules, false);
+    }
 
-        visionTab.addString("Pose", this::getFormattedPose)
-            .withPosition(0, 0)
-            .withSize(2, 0);
-        visionTab.add("Field", field2d)
-            .withPosition(2, 0)
-            .withSize(6,4);
+    public static SwerveModuleIO[] createSimModules() {
+        return new SwerveModuleIO[] {
+            new SwerveModuleIOSim(), new SwerveModuleIOSim(), new SwerveModuleIOSim(), new SwerveModuleIOSim()
+        };
     }
 
     private String getFormattedPose() {
+        // Shuffleboard asks for this every loop, only re-format when the shown digits would change
         Pose2d pose = getEstimatedPosition();
-        return String.format("(%.2f, %.2f) %.2f degrees",
-            pose.getX(),
-            pose.getY(),
-            pose.getRotation().getDegrees());
+        double x = pose.getX();
+        double y = pose.getY();
+        double degrees = pose.getRotation().getDegrees();
+        if (!(Math.abs(x - m_formattedX) < 0.005
+                && Math.abs(y - m_formattedY) < 0.005
+                && Math.abs(degrees - m_formattedDegrees) < 0.005)) {
+            m_formattedX = x;
+            m_formattedY = y;
+            m_formattedDegrees = degrees;
+            m_formattedPose = String.format("(%.2f, %.2f) %.2f degrees", x, y, degrees);
+        }
+        return m_formattedPose;
     }
 
 
     public void resetOdometry(Pose2d pose) {
+        m_odometryThread.clear();
+        // Old entries are in the old frame
+        m_poseHistory.clear();
+        syncOdometryDistances();
+        // The distances just jumped, the robot didn't
+        holdStanceDistances();
         poseEstimator.resetPosition(getGyroscopeRotation(), getPositions(), pose);
+        m_estimatorFed = false;
     }
 
     public void addVisionMeasurement(Pose2d visionRobotPoseMeters, double timestampSeconds) {
         poseEstimator.addVisionMeasurement(visionRobotPoseMeters, timestampSeconds);
+        m_log.logVisionPose(visionRobotPoseMeters, timestampSeconds);
+    }
+
+    /**
+     * After a collision the odometry is trusted less, see
+     * {@link #getOdometryStdDevScale(double)}. The estimator's state std-devs
+     * are fixed once it's built, but its gain only depends on the ratio of
+     * state to vision std-devs, so the vision x/y std-devs are divided by
+     * the scale instead. Heading comes from the gyro, which doesn't skid.
+     */
+    public void addVisionMeasurement(Pose2d visionRobotPoseMeters, double timestampSeconds, Matrix<N3, N1> stdDevs) {
+        double scale = getOdometryStdDevScale(timestampSeconds);
+        m_visionStdDevs.set(0, 0, stdDevs.get(0, 0) / scale);
+        m_visionStdDevs.set(1, 0, stdDevs.get(1, 0) / scale);
+        m_visionStdDevs.set(2, 0, stdDevs.get(2, 0));
+        poseEstimator.addVisionMeasurement(visionRobotPoseMeters, timestampSeconds, m_visionStdDevs);
+        m_log.logVisionPose(visionRobotPoseMeters, timestampSeconds);
+    }
+
+    /**
+     * How much less than usual wheel odometry should be trusted at an FPGA
+     * timestamp: 1 normally, up to COLLISION_STD_DEV_SCALE right after a
+     * collision.
+     */
+    public double getOdometryStdDevScale(double timestampSeconds) {
+        return m_frontEnd.getStdDevScale(timestampSeconds);
     }
 
     public Pose2d getEstimatedPosition() {
         return poseEstimator.getEstimatedPosition();
     }
 
+    /**
+     * Estimated pose at an FPGA timestamp in the last {@link #POSE_HISTORY_SECONDS},
+     * interpolated between odometry samples. Empty if that's older than the
+     * history goes back.
+     */
+    public Optional<Pose2d> getPoseAt(double timestampSeconds) {
+        if (!m_poseHistory.sample(timestampSeconds, m_historySample)) {
+            return Optional.empty();
+        }
+        return Optional.of(new Pose2d(
+            m_historySample[PoseHistory.X],
+            m_historySample[PoseHistory.Y],
+            new Rotation2d(m_historySample[PoseHistory.THETA])));
+    }
+
+    /**
+     * Measured field-relative velocity at an FPGA timestamp, from wheel
+     * odometry. Empty if that's older than the history goes back.
+     */
+    public Optional<ChassisSpeeds> getFieldVelocityAt(double timestampSeconds) {
+        if (!m_poseHistory.sample(timestampSeconds, m_historySample)) {
+            return Optional.empty();
+        }
+        return Optional.of(new ChassisSpeeds(
+            m_historySample[PoseHistory.VX],
+            m_historySample[PoseHistory.VY],
+            m_historySample[PoseHistory.OMEGA]));
+    }
+
+    /**
+     * Allocation-free version of {@link #getPoseAt(double)} and
+     * {@link #getFieldVelocityAt(double)}.
+     *
+     * @param out filled as described by {@link PoseHistory#sample(double, double[])}
+     */
+    public boolean samplePoseHistory(double timestampSeconds, double[] out) {
+        return m_poseHistory.sample(timestampSeconds, out);
+    }
+
+    public PoseHistory getPoseHistory() {
+        return m_poseHistory;
+    }
+
     public void zeroGyroscope() {
-        pigeon2.reset();
+        gyro.setYaw(0);
         resetOdometry(getEstimatedPosition());
     }
 
     public void resetGyroAt(double yaw) {
-        pigeon2.setYaw(yaw);
-     
+        gyro.setYaw(yaw);
     }
 
+    /**
+     * Rotation2d is immutable, so while the robot turns this builds a new
+     * one each time the yaw changed. Holding still, it's the same object.
+     */
     public Rotation2d getGyroscopeRotation() {
-        return pigeon2.getRotation2d();
+        double yaw = gyro.getYawDegrees();
+        if (yaw != m_lastYaw) {
+            m_lastYaw = yaw;
+            m_gyroRotation = Rotation2d.fromDegrees(yaw);
+        }
+        return m_gyroRotation;
     }
 
-    public WPI_Pigeon2 getGyro() {
-        return pigeon2;
+    public GyroIO getGyro() {
+        return gyro;
     }
 
 
     public void drive(ChassisSpeeds chassisSpeeds) {
-        ChassisSpeeds speedsModified = new ChassisSpeeds(
-            filter_vx.calculate(chassisSpeeds.vxMetersPerSecond),
-            filter_vy.calculate(chassisSpeeds.vyMetersPerSecond),
-            filter_or.calculate(chassisSpeeds.omegaRadiansPerSecond)
-        );
-        driveRaw(speedsModified);
+        drive(chassisSpeeds.vxMetersPerSecond, chassisSpeeds.vyMetersPerSecond, chassisSpeeds.omegaRadiansPerSecond);
+    }
+
+    /**
+     * Robot-relative speeds through the drivebase's rate limiter, unlike
+     * {@link #driveRaw(double, double, double)}.
+     */
+    public void drive(double vx, double vy, double omega) {
+        m_log.logCommandedSpeeds(vx, vy, omega);
+
+        double now = Timer.getFPGATimestamp();
+        if (!(now - m_lastDriveTime < TimedRobot.kDefaultPeriod * 1.5)) {
+            // Not called last loop, so limit from whatever we're doing now instead of a stale value
+            m_driveInput[InputStage.X] = m_chassisSpeeds.vxMetersPerSecond;
+            m_driveInput[InputStage.Y] = m_chassisSpeeds.vyMetersPerSecond;
+            m_driveInput[InputStage.OMEGA] = m_chassisSpeeds.omegaRadiansPerSecond;
+            m_driveLimiter.reset(m_driveInput);
+        }
+        m_lastDriveTime = now;
+
+        m_driveInput[InputStage.X] = vx;
+        m_driveInput[InputStage.Y] = vy;
+        m_driveInput[InputStage.OMEGA] = omega;
+        m_driveLimiter.apply(m_driveInput, TimedRobot.kDefaultPeriod);
+        setSpeeds(m_driveInput[InputStage.X], m_driveInput[InputStage.Y], m_driveInput[InputStage.OMEGA]);
     }
 
     public void driveRaw(ChassisSpeeds chassisSpeeds) {
-        m_chassisSpeeds = chassisSpeeds;
+        driveRaw(chassisSpeeds.vxMetersPerSecond, chassisSpeeds.vyMetersPerSecond, chassisSpeeds.omegaRadiansPerSecond);
+    }
+
+    public void driveRaw(double vx, double vy, double omega) {
+        m_log.logCommandedSpeeds(vx, vy, omega);
+        setSpeeds(vx, vy, omega);
     }
+
+    private void setSpeeds(double vx, double vy, double omega) {
+        m_chassisSpeeds.vxMetersPerSecond = vx;
+        m_chassisSpeeds.vyMetersPerSecond = vy;
+        m_chassisSpeeds.omegaRadiansPerSecond = omega;
+    }
+
     public void stop() {
-        driveRaw(new ChassisSpeeds());
+        driveRaw(0.0, 0.0, 0.0);
     }
 
+    public DriveMode getDriveMode() {
+        return m_driveModeChooser.getSelected();
+    }
+
+    public void setDriveFeedforward(double ks, double kv, double ka) {
+        m_driveFeedforward = new SimpleMotorFeedforward(ks, kv, ka);
+    }
+
+    public SimpleMotorFeedforward getDriveFeedforward() {
+        return m_driveFeedforward;
+    }
+
+    /**
+     * Points every module forward or backward, whichever is nearer, and
+     * drives them all so the robot goes forward at {@code volts}, ignoring
+     * commanded speeds. Pass NaN to go back to normal driving.
+     *
+     * Which way each module points is picked once when characterizing
+     * starts, so swerve-lib never gets a target more than 90 degrees away
+     * and never flips a module partway through.
+     */
+    public void setCharacterizationVoltage(double volts) {
+        if (Double.isNaN(m_characterizationVoltage) && !Double.isNaN(volts)) {
+            for (int i = 0; i < m_modules.length; i++) {
+                double angle = m_modules[i].getSteerAngle();
+                m_characterizationSigns[i] = Math.abs(MathUtil.angleModulus(angle)) <= Math.PI / 2 ? 1.0 : -1.0;
+            }
+        }
+        m_characterizationVoltage = volts;
+    }
+
+    /**
+     * Holds the X stance until released, whatever speeds are commanded.
+     * Only while enabled.
+     */
+    public void setBrakeStance(boolean engaged) {
+        m_stanceRequested = engaged;
+    }
+
+    /**
+     * Whether the drivebase goes into the X stance by itself after being
+     * stopped for STANCE_ENGAGE_SECONDS.
+     */
+    public void setAutoStance(boolean enabled) {
+        m_autoStance = enabled;
+    }
+
+    public boolean isAutoStanceEnabled() {
+        return m_autoStance;
+    }
+
+    /** In the X stance right now, requested or not */
+    public boolean isInStance() {
+        return m_stance;
+    }
+
+    /**
+     * Mean wheel velocity along the robot's forward axis. A module pointing
+     * backward and driving in reverse counts as going forward.
+     */
+    public double getAverageDriveVelocity() {
+        double sum = 0;
+        for (SwerveModuleIO module : m_modules) {
+            sum += module.getDriveVelocity() * Math.cos(module.getSteerAngle());
+        }
+        return sum / m_modules.length;
+    }
+
+    /**
+     * Mean absolute difference between target and measured wheel speed
+     * last loop, in meters per second.
+     */
+    public double getTrackingError() {
+        return m_trackingError;
+    }
+
+    /**
+     * Module positions as the pose estimator sees them, with the travel of
+     * slipping wheels replaced. Not the raw encoder distances.
+     */
     public SwerveModulePosition[] getPositions() {
-        return new SwerveModulePosition[] {
-            m_frontLeftModule.getPosition(),
-            m_frontRightModule.getPosition(),
-            m_backLeftModule.getPosition(),
-            m_backRightModule.getPosition()
-        };
+        SwerveModulePosition[] positions = new SwerveModulePosition[m_modules.length];
+        for (int i = 0; i < m_modules.length; i++) {
+            positions[i] = new SwerveModulePosition(m_frontEnd.getDistances()[i], new Rotation2d(m_modules[i].getSteerAngle()));
+        }
+        return positions;
+    }
+
+    // Starts the estimator's distances over from the raw encoders
+    private void syncOdometryDistances() {
+        for (int i = 0; i < m_modules.length; i++) {
+            m_rawDistances[i] = m_modules[i].getDriveDistance();
+        }
+        m_frontEnd.reset(m_rawDistances);
+    }
+
+    public SlipEstimator getSlipEstimator() {
+        return m_slip;
+    }
+
+    public OdometryFrontEnd getOdometryFrontEnd() {
+        return m_frontEnd;
+    }
+
+    /**
+     * Whether slipping modules get their target speed pulled back toward
+     * the ground speed. Slip is still tracked, and still kept out of
+     * odometry, with this off.
+     */
+    public void setTractionControl(boolean enabled) {
+        m_tractionControl = enabled;
+    }
+
+    public boolean isTractionControlEnabled() {
+        return m_tractionControl;
+    }
+
+    /**
+     * Whether chassis speeds are discretized over the loop and the steer
+     * motors get a rate feedforward, see
+     * {@link SwerveStateBuffer#fromChassisSpeeds(double, double, double, double)}.
+     * Off is plain first-order kinematics, for comparing.
+     */
+    public void setSecondOrderKinematics(boolean enabled) {
+        m_secondOrder = enabled;
+    }
+
+    public boolean isSecondOrderKinematicsEnabled() {
+        return m_secondOrder;
+    }
+
+    /**
+     * Module setpoints dropped because they matched the last one sent. Each
+     * one is a drive and a steer motor update that didn't happen.
+     */
+    public long getSuppressedSetpoints() {
+        long suppressed = 0;
+        for (SwerveModuleOutput output : m_outputs) {
+            suppressed += output.getSuppressedCount();
+        }
+        return suppressed;
+    }
+
+    public PowerManager getPowerManager() {
+        return m_power;
+    }
+
+    public SwerveModuleIO[] getModules() {
+        return m_modules;
+    }
+
+    public OdometryThread getOdometryThread() {
+        return m_odometryThread;
+    }
+
+    /**
+     * Refreshes one entry of the reused position buffer in place. The
+     * module's Rotation2d is only rebuilt when its steer angle changed.
+     * Rotation2d is immutable and the estimator needs one per module, so
+     * that's one small allocation per steering module per sample. The
+     * estimator's own update allocates more than that anyway, which is why
+     * it's only run when something moved.
+     */
+    private void setPosition(int i, double distance, double angle) {
+        m_positions[i].distanceMeters = distance;
+        if (angle != m_moduleAngles[i]) {
+            m_moduleAngles[i] = angle;
+            m_positions[i].angle = new Rotation2d(angle);
+        }
+    }
+
+    /**
+     * Feeds every sample queued by the odometry thread since last loop into
+     * the pose estimator, using the timestamps they were taken at.
+     */
+    private void updateOdometry() {
+        if (!m_odometryThreadRunning) {
+            m_odometryThread.sampleNow();
+        }
+
+        boolean sampled = false;
+        while (m_odometryThread.poll(m_odometrySample)) {
+            boolean hasSpeeds = m_frontEnd.update(
+                m_odometrySample.timestamp,
+                m_odometrySample.distances,
+                m_odometrySample.angles,
+                m_odometrySample.yawDegrees);
+            double[] distances = m_frontEnd.getDistances();
+            boolean moved = !m_estimatorFed;
+            for (int i = 0; i < m_modules.length; i++) {
+                moved |= distances[i] != m_positions[i].distanceMeters;
+                setPosition(i, distances[i], m_odometrySample.angles[i]);
+            }
+            if (m_odometrySample.yawDegrees != m_lastOdometryYaw) {
+                m_lastOdometryYaw = m_odometrySample.yawDegrees;
+                m_odometryRotation = Rotation2d.fromDegrees(m_odometrySample.yawDegrees);
+                moved = true;
+            }
+            // With no distance or yaw change the estimator's update is a zero twist that
+            // still allocates. Vision keeps working off the last sample it was given.
+            Pose2d pose = moved
+                ? poseEstimator.updateWithTime(m_odometrySample.timestamp, m_odometryRotation, m_positions)
+                : poseEstimator.getEstimatedPosition();
+            m_estimatorFed = true;
+            recordHistory(pose, hasSpeeds);
+            m_log.logModulePositions(
+                m_odometrySample.distances,
+                m_odometrySample.angles,
+                m_odometrySample.yawDegrees,
+                m_odometrySample.timestamp);
+            sampled = true;
+        }
+
+        if (!sampled) {
+            // Nothing queued yet, still need fresh module angles for optimize
+            for (int i = 0; i < m_modules.length; i++) {
+                setPosition(i, m_frontEnd.getDistances()[i], m_modules[i].getSteerAngle());
+            }
+        }
     }
 
+    /**
+     * Adds the pose from the current odometry sample to the history, with
+     * the field-relative velocity implied by the wheel speeds since the
+     * previous sample.
+     */
+    private void recordHistory(Pose2d pose, boolean hasSpeeds) {
+        double timestamp = m_odometrySample.timestamp;
+        if (hasSpeeds) {
+            m_states.toChassisSpeeds(m_frontEnd.getSpeeds(), m_odometrySample.angles, m_sampleChassisSpeeds);
+        } else {
+            m_sampleChassisSpeeds[0] = 0;
+            m_sampleChassisSpeeds[1] = 0;
+            m_sampleChassisSpeeds[2] = 0;
+        }
+
+        // Robot-relative to field-relative
+        double cos = pose.getRotation().getCos();
+        double sin = pose.getRotation().getSin();
+        double vx = m_sampleChassisSpeeds[0];
+        double vy = m_sampleChassisSpeeds[1];
+        m_poseHistory.record(
+            timestamp,
+            pose.getX(),
+            pose.getY(),
+            pose.getRotation().getRadians(),
+            vx * cos - vy * sin,
+            vx * sin + vy * cos,
+            m_sampleChassisSpeeds[2]);
+    }
+
+    /**
+     * Empty in simulation.
+     */
     public List<WPI_TalonFX> getMotors() {
         List<WPI_TalonFX> retval = new ArrayList<>();
-        for (SwerveModule s : new SwerveModule[]{ m_frontLeftModule, m_frontRightModule, m_backLeftModule, m_backRightModule }) {
-            retval.add((WPI_TalonFX) s.getSteerMotor());
-            retval.add((WPI_TalonFX) s.getDriveMotor());
+        for (SwerveModuleIO s : m_modules) {
+            if (s instanceof SwerveModuleIOReal) {
+                retval.add(((SwerveModuleIOReal) s).getSteerMotor());
+                retval.add(((SwerveModuleIOReal) s).getDriveMotor());
+            }
         }
         return retval;
     }
 
+    /**
+     * Steps the simulated modules and gyro. Public so the drive loop can be
+     * stepped faster than real time.
+     */
+    public void simulate(double dtSeconds) {
+        for (SwerveModuleIO module : m_modules) {
+            module.update(dtSeconds);
+        }
+        gyro.update(dtSeconds);
+    }
 
     @Override
-    public void periodic() {
-        poseEstimator.update(getGyroscopeRotation(), getPositions());
-        field2d.setRobotPose(getEstimatedPosition());
-        SmartDashboard.putNumber("Pitch", pigeon2.getPitch());
+    public void simulationPeriodic() {
+        simulate(TimedRobot.kDefaultPeriod);
+        // Sag the simulated battery under the drivetrain's draw, so PowerManager has something to react to
+        RoboRioSim.setVInVoltage(BatterySim.calculateDefaultBatteryLoadedVoltage(m_power.getTotalCurrent()));
+    }
+
+
+    /**
+     * Pulls the target speed of every slipping module back to within
+     * TRACTION_SLIP_ALLOWANCE of the speed its wheel would roll at on the
+     * ground, so it's driven just hard enough to get grip back.
+     */
+    private void applyTractionControl() {
+        for (int i = 0; i < m_modules.length; i++) {
+            if (m_slip.isSlipping(i)) {
+                double ground = m_slip.getGroundSpeed(i, m_states.angles[i]);
+                m_states.speeds[i] = MathUtil.clamp(m_states.speeds[i],
+                    ground - TRACTION_SLIP_ALLOWANCE, ground + TRACTION_SLIP_ALLOWANCE);
+            }
+        }
+    }
+
+    /**
+     * Going into the stance remembers the wheel distances to hold. The drive
+     * motors are already in brake mode, swerve-lib sets that for every module.
+     */
+    private void setStance(boolean stance) {
+        m_stance = stance;
+        if (stance) {
+            holdStanceDistances();
+        }
+    }
+
+    private void holdStanceDistances() {
+        System.arraycopy(m_frontEnd.getDistances(), 0, m_stanceDistances, 0, m_modules.length);
+    }
+
+    /**
+     * Module targets for the X stance, straight into the state buffer.
+     *
+     * Every wheel points at the center, so pushing or turning the robot
+     * means scrubbing them sideways. Whatever part of a push lines up with
+     * a wheel rolls it, and once that's past the deadband the wheel drives
+     * back toward where it was when the stance started. Together the four
+     * directions cover any push. Angles are flipped by half a turn toward
+     * wherever each module already points, like optimize() would, so no
+     * module has to swing around to get into the X.
+     */
+    private void fillStanceStates() {
+        double[] distances = m_frontEnd.getDistances();
+        for (int i = 0; i < m_modules.length; i++) {
+            double error = m_stanceDistances[i] - distances[i];
+            double speed = 0;
+            if (Math.abs(error) > STANCE_POSITION_DEADBAND) {
+                speed = MathUtil.clamp(STANCE_KP * (error - Math.copySign(STANCE_POSITION_DEADBAND, error)),
+                    -STANCE_MAX_SPEED, STANCE_MAX_SPEED);
+            }
+            // Wheel distance, not a direction, so the speed doesn't flip with the angle
+            m_states.speeds[i] = speed;
+            m_states.angles[i] = m_stanceAngles[i];
+            if (Math.abs(MathUtil.angleModulus(m_stanceAngles[i] - m_moduleAngles[i])) > Math.PI / 2) {
+                m_states.angles[i] += Math.PI;
+            }
+        }
+    }
+
+    @Override
+    protected void profiledPeriodic() {
+        updateOdometry();
+        if (m_canBus != null) {
+            m_canBus.update();
+        }
+
+        // Tilted, the accelerometer mostly reads gravity
+        double pitch = gyro.getPitchDegrees();
+        double roll = gyro.getRollDegrees();
+        double ax = gyro.getAccelerationX();
+        double ay = gyro.getAccelerationY();
+        boolean level = OdometryFrontEnd.isLevel(pitch, roll);
+        double now = Timer.getFPGATimestamp();
+        m_frontEnd.updateAcceleration(
+            now,
+            level ? ax : Double.NaN,
+            level ? ay : Double.NaN,
+            TimedRobot.kDefaultPeriod);
+        for (int i = 0; i < m_modules.length; i++) {
+            m_moduleSlip[i] = m_slip.isSlipping(i) ? m_slip.getSlip(i) : 0.0;
+        }
+        m_log.logModuleSlip(m_moduleSlip);
+        m_log.logAcceleration(ax, ay);
+        m_log.logOdometryTrust(m_frontEnd.getCollisionDetector().getResidual(), getOdometryStdDevScale(now));
+
+        if (m_power.update(RobotController.getBatteryVoltage(), TimedRobot.kDefaultPeriod)) {
+            m_log.logPowerLimits(
+                m_power.getFilteredVoltage(),
+                m_power.getTotalCurrent(),
+                m_power.getDriveLimit(),
+                m_power.getSlewScale());
+        }
+
+        m_log.logGyro(gyro.getYawDegrees(), pitch, roll);
+        m_log.logPose(getEstimatedPosition());
+        m_log.logLimitedSpeeds(
+            m_chassisSpeeds.vxMetersPerSecond,
+            m_chassisSpeeds.vyMetersPerSecond,
+            m_chassisSpeeds.omegaRadiansPerSecond);
         
         final double zeroDeadzone = 0.001;
 
@@ -228,45 +936,81 @@ public class Drivebase extends SubsystemBase {
             m_chassisSpeeds.vyMetersPerSecond = 0;
         }
 
-        // Hockey-lock if stopped by setting rotation to realllly low number
-        if (m_chassisSpeeds.vxMetersPerSecond == 0 && 
-            m_chassisSpeeds.vyMetersPerSecond == 0 && 
-            Math.abs(m_chassisSpeeds.omegaRadiansPerSecond) < zeroDeadzone) {
-            m_chassisSpeeds.omegaRadiansPerSecond = 0.00001;
+        boolean stopped = m_chassisSpeeds.vxMetersPerSecond == 0
+            && m_chassisSpeeds.vyMetersPerSecond == 0
+            && Math.abs(m_chassisSpeeds.omegaRadiansPerSecond) < zeroDeadzone;
+        if (!stopped) {
+            m_stoppedSince = Double.NaN;
+        } else if (Double.isNaN(m_stoppedSince)) {
+            m_stoppedSince = now;
         }
-
-        SmartDashboard.putNumber("DT X spd", m_chassisSpeeds.vxMetersPerSecond);
-        SmartDashboard.putNumber("DT Y spd", m_chassisSpeeds.vyMetersPerSecond);
-        SmartDashboard.putNumber("DT . spd", Math.hypot(m_chassisSpeeds.vxMetersPerSecond, m_chassisSpeeds.vyMetersPerSecond));
-        SmartDashboard.putNumber("DT O rot", m_chassisSpeeds.omegaRadiansPerSecond);
-
-        SwerveModuleState[] states = m_kinematics.toSwerveModuleStates(m_chassisSpeeds);
-
-        SwerveDriveKinematics.desaturateWheelSpeeds(states, MAX_VELOCITY_METERS_PER_SECOND);
-
-        SwerveModulePosition[] positions = getPositions();
-        for (int i = 0; i < states.length; i++) {
-            states[i] = SwerveModuleState.optimize(states[i], positions[i].angle);
+        // Disabled, the robot can be pushed or carried. The stance drops then, so
+        // enabling records fresh distances instead of driving back to old ones
+        boolean stance = DriverStation.isEnabled()
+            && Double.isNaN(m_characterizationVoltage)
+            && (m_stanceRequested || (m_autoStance && now - m_stoppedSince >= STANCE_ENGAGE_SECONDS));
+        if (stance != m_stance) {
+            setStance(stance);
         }
 
-        double flVoltage;
-        double frVoltage;
-        double blVoltage;
-        double brVoltage;
-
-        flVoltage = states[0].speedMetersPerSecond;
-        frVoltage = states[1].speedMetersPerSecond;
-        blVoltage = states[2].speedMetersPerSecond;
-        brVoltage = states[3].speedMetersPerSecond;
+        if (m_stance) {
+            // Fixed angles, no kinematics, nothing to desaturate or optimize
+            fillStanceStates();
+            m_states.clearSteerRates();
+        } else {
+            if (m_secondOrder && Double.isNaN(m_characterizationVoltage)) {
+                m_states.fromChassisSpeeds(
+                    m_chassisSpeeds.vxMetersPerSecond,
+                    m_chassisSpeeds.vyMetersPerSecond,
+                    m_chassisSpeeds.omegaRadiansPerSecond,
+                    TimedRobot.kDefaultPeriod);
+            } else {
+                m_states.fromChassisSpeeds(
+                    m_chassisSpeeds.vxMetersPerSecond,
+                    m_chassisSpeeds.vyMetersPerSecond,
+                    m_chassisSpeeds.omegaRadiansPerSecond);
+                m_states.clearSteerRates();
+            }
+
+            m_states.desaturate(MAX_VELOCITY_METERS_PER_SECOND);
+
+            m_states.optimize(m_moduleAngles);
+            if (m_tractionControl && Double.isNaN(m_characterizationVoltage)) {
+                applyTractionControl();
+            }
+        }
+        m_log.logModuleTargets(m_states.speeds, m_states.angles);
 
-        flVoltage = flVoltage / MAX_VELOCITY_METERS_PER_SECOND * MAX_VOLTAGE;
-        frVoltage = frVoltage / MAX_VELOCITY_METERS_PER_SECOND * MAX_VOLTAGE;
-        blVoltage = blVoltage / MAX_VELOCITY_METERS_PER_SECOND * MAX_VOLTAGE;
-        brVoltage = brVoltage / MAX_VELOCITY_METERS_PER_SECOND * MAX_VOLTAGE;
+        double error = 0;
+        for (int i = 0; i < m_modules.length; i++) {
+            error += Math.abs(m_lastTargetSpeeds[i] - m_modules[i].getDriveVelocity());
+        }
+        m_trackingError = error / m_modules.length;
+
+        if (!Double.isNaN(m_characterizationVoltage)) {
+            for (int i = 0; i < m_modules.length; i++) {
+                double sign = m_characterizationSigns[i];
+                m_outputs[i].set(sign * m_characterizationVoltage, sign > 0 ? 0.0 : Math.PI, 0.0, now);
+            }
+        } else if (getDriveMode() == DriveMode.CLOSED_LOOP) {
+            for (int i = 0; i < m_modules.length; i++) {
+                double speed = m_states.speeds[i];
+                // A flip from optimize isn't a real acceleration
+                double accel = Math.signum(speed) == Math.signum(m_lastTargetSpeeds[i])
+                    ? (speed - m_lastTargetSpeeds[i]) / TimedRobot.kDefaultPeriod
+                    : 0.0;
+                m_outputs[i].setVelocity(speed, m_driveFeedforward.calculate(speed, accel),
+                    m_states.angles[i], m_states.steerRates[i], now);
+            }
+        } else {
+            for (int i = 0; i < m_modules.length; i++) {
+                double voltage = m_states.speeds[i] / MAX_VELOCITY_METERS_PER_SECOND * MAX_VOLTAGE;
+                m_outputs[i].set(voltage, m_states.angles[i], m_states.steerRates[i], now);
+            }
+        }
 
-        m_frontLeftModule.set(flVoltage, states[0].angle.getRadians());
-        m_frontRightModule.set(frVoltage, states[1].angle.getRadians());
-        m_backLeftModule.set(blVoltage, states[2].angle.getRadians());
-        m_backRightModule.set(brVoltage, states[3].angle.getRadians());
+        for (int i = 0; i < m_modules.length; i++) {
+            m_lastTargetSpeeds[i] = Double.isNaN(m_characterizationVoltage) ? m_states.speeds[i] : 0.0;
+        }
     }
 }
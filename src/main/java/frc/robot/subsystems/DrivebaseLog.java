@@ -0,0 +1,156 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
+import edu.wpi.first.util.datalog.DoubleLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+
+/**
+ * Typed DataLog entries for the full drivetrain state, written every loop.
+ *
+ * Entry handles and value arrays are created once. DataLog appends only copy
+ * into its in-memory buffer; its own background thread does the file
+ * writes, so none of this waits on the disk. Read the log back on a laptop
+ * with frc.robot.util.DrivetrainLogReplay.
+ *
+ * Array layouts:
+ * speeds are [vx, vy, omega], module arrays are [value0, angle0, value1, angle1, ...]
+ * with angles in radians, and the pose is [x, y, radians]. Module slip is
+ * [slip0, slip1, ...] in m/s, zero for modules that aren't slipping.
+ * Acceleration is robot-relative [ax, ay] in m/s^2, and odometry trust is
+ * [twist fit residual in m/s, std-dev scale]. OdometryYaw is the gyro yaw
+ * in degrees taken with each ModulePositions sample, at the same timestamp.
+ * PowerLimits is [filtered battery volts, drivetrain supply amps, drive
+ * current limit in amps, slew scale], written only when the limit changes.
+ * VisionPose is each vision pose the estimator accepted, as [x, y, radians]
+ * at the time the camera captured it.
+ */
+public class DrivebaseLog {
+    public static final String PREFIX = "/Drivebase/";
+
+    private final DoubleArrayLogEntry commandedSpeeds;
+    private final DoubleArrayLogEntry limitedSpeeds;
+    private final DoubleArrayLogEntry moduleTargets;
+    private final DoubleArrayLogEntry modulePositions;
+    private final DoubleArrayLogEntry moduleSlip;
+    private final DoubleLogEntry odometryYaw;
+    private final DoubleArrayLogEntry acceleration;
+    private final DoubleArrayLogEntry odometryTrust;
+    private final DoubleLogEntry gyroYaw;
+    private final DoubleLogEntry gyroPitch;
+    private final DoubleLogEntry gyroRoll;
+    private final DoubleArrayLogEntry estimatedPose;
+    private final DoubleArrayLogEntry visionPose;
+    private final DoubleArrayLogEntry powerLimits;
+
+    private final double[] speeds = new double[3];
+    private final double[] modules;
+    private final double[] pose = new double[3];
+    private final double[] vision = new double[3];
+    private final double[] pair = new double[2];
+    private final double[] power = new double[4];
+
+    public DrivebaseLog(int moduleCount) {
+        DataLog log = DataLogManager.getLog();
+        commandedSpeeds = new DoubleArrayLogEntry(log, PREFIX + "CommandedSpeeds");
+        limitedSpeeds = new DoubleArrayLogEntry(log, PREFIX + "LimitedSpeeds");
+        moduleTargets = new DoubleArrayLogEntry(log, PREFIX + "ModuleTargets");
+        modulePositions = new DoubleArrayLogEntry(log, PREFIX + "ModulePositions");
+        moduleSlip = new DoubleArrayLogEntry(log, PREFIX + "ModuleSlip");
+        odometryYaw = new DoubleLogEntry(log, PREFIX + "OdometryYaw");
+        acceleration = new DoubleArrayLogEntry(log, PREFIX + "Acceleration");
+        odometryTrust = new DoubleArrayLogEntry(log, PREFIX + "OdometryTrust");
+        gyroYaw = new DoubleLogEntry(log, PREFIX + "GyroYaw");
+        gyroPitch = new DoubleLogEntry(log, PREFIX + "GyroPitch");
+        gyroRoll = new DoubleLogEntry(log, PREFIX + "GyroRoll");
+        estimatedPose = new DoubleArrayLogEntry(log, PREFIX + "EstimatedPose");
+        visionPose = new DoubleArrayLogEntry(log, PREFIX + "VisionPose");
+        powerLimits = new DoubleArrayLogEntry(log, PREFIX + "PowerLimits");
+
+        modules = new double[moduleCount * 2];
+    }
+
+    private static void pack(double[] out, double[] values, double[] angles) {
+        for (int i = 0; i < values.length; i++) {
+            out[i * 2] = values[i];
+            out[i * 2 + 1] = angles[i];
+        }
+    }
+
+    public void logCommandedSpeeds(double vx, double vy, double omega) {
+        speeds[0] = vx;
+        speeds[1] = vy;
+        speeds[2] = omega;
+        commandedSpeeds.append(speeds);
+    }
+
+    public void logLimitedSpeeds(double vx, double vy, double omega) {
+        speeds[0] = vx;
+        speeds[1] = vy;
+        speeds[2] = omega;
+        limitedSpeeds.append(speeds);
+    }
+
+    public void logModuleTargets(double[] speedsMetersPerSecond, double[] anglesRadians) {
+        pack(modules, speedsMetersPerSecond, anglesRadians);
+        moduleTargets.append(modules);
+    }
+
+    /**
+     * @param timestampSeconds FPGA time the positions were sampled at
+     */
+    public void logModulePositions(double[] distancesMeters, double[] anglesRadians, double yawDegrees, double timestampSeconds) {
+        long timestamp = (long) (timestampSeconds * 1e6);
+        odometryYaw.append(yawDegrees, timestamp);
+        pack(modules, distancesMeters, anglesRadians);
+        modulePositions.append(modules, timestamp);
+    }
+
+    public void logModuleSlip(double[] slipMetersPerSecond) {
+        moduleSlip.append(slipMetersPerSecond);
+    }
+
+    public void logAcceleration(double ax, double ay) {
+        pair[0] = ax;
+        pair[1] = ay;
+        acceleration.append(pair);
+    }
+
+    public void logOdometryTrust(double residual, double stdDevScale) {
+        pair[0] = residual;
+        pair[1] = stdDevScale;
+        odometryTrust.append(pair);
+    }
+
+    public void logGyro(double yawDegrees, double pitchDegrees, double rollDegrees) {
+        gyroYaw.append(yawDegrees);
+        gyroPitch.append(pitchDegrees);
+        gyroRoll.append(rollDegrees);
+    }
+
+    public void logPose(Pose2d estimated) {
+        pose[0] = estimated.getX();
+        pose[1] = estimated.getY();
+        pose[2] = estimated.getRotation().getRadians();
+        estimatedPose.append(pose);
+    }
+
+    /**
+     * @param timestampSeconds FPGA time the camera captured it
+     */
+    public void logVisionPose(Pose2d measured, double timestampSeconds) {
+        vision[0] = measured.getX();
+        vision[1] = measured.getY();
+        vision[2] = measured.getRotation().getRadians();
+        visionPose.append(vision, (long) (timestampSeconds * 1e6));
+    }
+
+    public void logPowerLimits(double batteryVoltage, double totalCurrent, double driveLimit, double slewScale) {
+        power[0] = batteryVoltage;
+        power[1] = totalCurrent;
+        power[2] = driveLimit;
+        power[3] = slewScale;
+        powerLimits.append(power);
+    }
+}
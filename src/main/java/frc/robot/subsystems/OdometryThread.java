@@ -0,0 +1,266 @@
+package frc.robot.subsystems;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Threads;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.subsystems.io.GyroIO;
+import frc.robot.subsystems.io.SwerveModuleIO;
+
+/**
+ * Samples the swerve modules and gyro on its own Notifier thread, faster than
+ * the main robot loop, so pose accuracy doesn't depend on how long the rest
+ * of the loop takes.
+ *
+ * Samples go into a single-producer/single-consumer ring buffer of primitive
+ * arrays. The main loop drains it with {@link #poll(Sample)}.
+ */
+public class OdometryThread {
+    private static final int CAPACITY = 64;
+    private static final double STATS_WINDOW_SECONDS = 1.0;
+    // Older than this the robot has stopped, not the frames
+    private static final double MAX_DATA_AGE_SECONDS = 0.1;
+
+    /**
+     * One timestamped reading of all modules and the gyro. Reused by the
+     * consumer, so copy anything you want to keep.
+     */
+    public static class Sample {
+        public double timestamp;
+        public double yawDegrees;
+        public final double[] distances;
+        public final double[] angles;
+
+        public Sample(int moduleCount) {
+            distances = new double[moduleCount];
+            angles = new double[moduleCount];
+        }
+    }
+
+    private final SwerveModuleIO[] modules;
+    private final GyroIO gyro;
+    private final int moduleCount;
+
+    private final double[] timestamps = new double[CAPACITY];
+    private final double[] yaws = new double[CAPACITY];
+    private final double[] distances;
+    private final double[] angles;
+
+    // Producer only writes head, consumer only writes tail
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long dropped = 0;
+
+    private final Notifier notifier;
+    private double frequencyHz;
+    private boolean priorityRaised = false;
+
+    // Producer-side stats, published through the volatiles below once per window
+    private double lastSampleTime = Double.NaN;
+    private double windowStart = Double.NaN;
+    private int windowCount = 0;
+    private double windowDtSum = 0;
+    private double windowDtSqSum = 0;
+    private double windowMaxError = 0;
+    private int windowFreshCount = 0;
+    private double lastDriveDistance = Double.NaN;
+    private double lastFreshTime = Double.NaN;
+    private int windowAgeCount = 0;
+    private double windowAgeSum = 0;
+    private double windowMaxAge = 0;
+
+    private volatile double achievedHz = 0;
+    private volatile double jitterSeconds = 0;
+    private volatile double maxPeriodErrorSeconds = 0;
+    private volatile double freshHz = 0;
+    private volatile double dataAgeSeconds = 0;
+    private volatile double maxDataAgeSeconds = 0;
+
+    public OdometryThread(SwerveModuleIO[] modules, GyroIO gyro, double frequencyHz) {
+        this.modules = modules;
+        this.gyro = gyro;
+        this.moduleCount = modules.length;
+        this.frequencyHz = frequencyHz;
+
+        distances = new double[CAPACITY * moduleCount];
+        angles = new double[CAPACITY * moduleCount];
+
+        notifier = new Notifier(this::run);
+        notifier.setName("Odometry");
+    }
+
+    public void start() {
+        notifier.startPeriodic(1.0 / frequencyHz);
+    }
+
+    public void stop() {
+        notifier.stop();
+    }
+
+    public void setFrequency(double frequencyHz) {
+        this.frequencyHz = frequencyHz;
+        notifier.startPeriodic(1.0 / frequencyHz);
+    }
+
+    public double getFrequency() {
+        return frequencyHz;
+    }
+
+    private void run() {
+        if (!priorityRaised) {
+            // Run above the main robot thread so a slow loop can't starve odometry
+            Threads.setCurrentThreadPriority(true, 15);
+            priorityRaised = true;
+        }
+        sampleNow();
+    }
+
+    /**
+     * Takes one sample on the calling thread. Used instead of {@link #start()}
+     * when the drive loop is stepped on a virtual clock.
+     */
+    public void sampleNow() {
+        double now = Timer.getFPGATimestamp();
+        updateStats(now);
+
+        long h = head.get();
+        if (h - tail.get() >= CAPACITY) {
+            // Main loop has fallen a whole buffer behind, drop the newest sample
+            dropped++;
+            return;
+        }
+
+        int slot = (int) (h % CAPACITY);
+        int base = slot * moduleCount;
+        timestamps[slot] = now;
+        yaws[slot] = gyro.getYawDegrees();
+        for (int i = 0; i < moduleCount; i++) {
+            distances[base + i] = modules[i].getDriveDistance();
+            angles[base + i] = modules[i].getSteerAngle();
+        }
+        // A new value means a new status frame made it in since the last sample
+        if (distances[base] != lastDriveDistance) {
+            lastDriveDistance = distances[base];
+            lastFreshTime = now;
+            windowFreshCount++;
+        }
+        // Time since that value first showed up, about how stale the frame is by now
+        double age = now - lastFreshTime;
+        if (age < MAX_DATA_AGE_SECONDS) {
+            windowAgeCount++;
+            windowAgeSum += age;
+            windowMaxAge = Math.max(windowMaxAge, age);
+        }
+
+        head.lazySet(h + 1);
+    }
+
+    private void updateStats(double now) {
+        if (!Double.isNaN(lastSampleTime)) {
+            double dt = now - lastSampleTime;
+            windowCount++;
+            windowDtSum += dt;
+            windowDtSqSum += dt * dt;
+            windowMaxError = Math.max(windowMaxError, Math.abs(dt - 1.0 / frequencyHz));
+        }
+        lastSampleTime = now;
+
+        if (Double.isNaN(windowStart)) {
+            windowStart = now;
+        } else if (now - windowStart >= STATS_WINDOW_SECONDS && windowCount > 0) {
+            double mean = windowDtSum / windowCount;
+            double variance = Math.max(0, windowDtSqSum / windowCount - mean * mean);
+
+            achievedHz = windowCount / (now - windowStart);
+            jitterSeconds = Math.sqrt(variance);
+            maxPeriodErrorSeconds = windowMaxError;
+            freshHz = windowFreshCount / (now - windowStart);
+            dataAgeSeconds = windowAgeCount > 0 ? windowAgeSum / windowAgeCount : 0;
+            maxDataAgeSeconds = windowMaxAge;
+
+            windowStart = now;
+            windowCount = 0;
+            windowDtSum = 0;
+            windowDtSqSum = 0;
+            windowMaxError = 0;
+            windowFreshCount = 0;
+            windowAgeCount = 0;
+            windowAgeSum = 0;
+            windowMaxAge = 0;
+        }
+    }
+
+    /**
+     * Copies the oldest queued sample into {@code out}.
+     *
+     * @return false if there was nothing queued
+     */
+    public boolean poll(Sample out) {
+        long t = tail.get();
+        if (t >= head.get()) {
+            return false;
+        }
+
+        int slot = (int) (t % CAPACITY);
+        int base = slot * moduleCount;
+        out.timestamp = timestamps[slot];
+        out.yawDegrees = yaws[slot];
+        for (int i = 0; i < moduleCount; i++) {
+            out.distances[i] = distances[base + i];
+            out.angles[i] = angles[base + i];
+        }
+
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Throws away everything queued, e.g. after the pose estimator is reset.
+     */
+    public void clear() {
+        tail.set(head.get());
+    }
+
+    public double getAchievedHz() {
+        return achievedHz;
+    }
+
+    /** Standard deviation of the sample period over the last window. */
+    public double getJitterSeconds() {
+        return jitterSeconds;
+    }
+
+    /** Worst deviation from the requested period over the last window. */
+    public double getMaxPeriodErrorSeconds() {
+        return maxPeriodErrorSeconds;
+    }
+
+    /**
+     * Samples per second over the last window that had a new drive position,
+     * so how often the data actually changes, however fast it's sampled.
+     * Only means anything while the robot is moving.
+     */
+    public double getFreshSampleHz() {
+        return freshHz;
+    }
+
+    /**
+     * Average time since the drive position last changed, over the samples
+     * in the last window taken while moving. A status frame held up on the
+     * bus shows up here. It only resolves to the sample period, and the
+     * frame's time on the wire before it reaches the roboRIO isn't in it.
+     */
+    public double getDataAgeSeconds() {
+        return dataAgeSeconds;
+    }
+
+    /** Worst of the same over the last window. */
+    public double getMaxDataAgeSeconds() {
+        return maxDataAgeSeconds;
+    }
+
+    public long getDroppedSamples() {
+        return dropped;
+    }
+}
@@ -0,0 +1,25 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.util.LoopProfiler;
+
+/**
+ * A subsystem whose periodic() is timed by the {@link LoopProfiler} as
+ * "ClassName.periodic". The scheduler has no hook around each subsystem's
+ * periodic(), so every subsystem extends this and puts its loop in
+ * {@link #profiledPeriodic()} instead.
+ */
+public abstract class ProfiledSubsystem extends SubsystemBase {
+    private final LoopProfiler profiler = LoopProfiler.getInstance();
+    private final int section = profiler.register(getClass().getSimpleName() + ".periodic");
+
+    @Override
+    public final void periodic() {
+        long start = System.nanoTime();
+        profiledPeriodic();
+        profiler.record(section, start);
+    }
+
+    /** What periodic() would be, called once per scheduler run. */
+    protected void profiledPeriodic() {}
+}
@@ -0,0 +1,196 @@
+package frc.robot.subsystems;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+import org.photonvision.EstimatedRobotPose;
+import org.photonvision.PhotonCamera;
+import org.photonvision.PhotonPoseEstimator;
+import org.photonvision.PhotonPoseEstimator.PoseStrategy;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.photonvision.targeting.PhotonTrackedTarget;
+
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Notifier;
+import frc.robot.util.PoseHistory;
+import frc.robot.util.SpscDoubleQueue;
+import frc.robot.util.Telemetry;
+
+import static frc.robot.Constants.*;
+
+/**
+ * Pulls PhotonVision results and solves robot poses on its own Notifier
+ * thread, then hands accepted measurements to the Drivebase pose estimator
+ * through a lock-free queue, so vision never stalls the main loop.
+ *
+ * Poses are solved from every visible tag at once (multi-tag PnP, falling
+ * back to the least ambiguous single tag) using {@link frc.robot.Constants#ROBOT_TO_CAMERA}.
+ * Measurements are thrown out when a single tag is too ambiguous, the tags
+ * are too far away, the pose is off the field or in the air, or a single-tag
+ * pose jumps too far from where odometry thinks we were when the frame was
+ * captured. Std-devs grow with
+ * the square of the average tag distance and shrink with more tags.
+ */
+public class Vision extends ProfiledSubsystem {
+    private static final double LOOP_PERIOD_SECONDS = 0.01;
+    private static final int QUEUE_CAPACITY = 16;
+    // x, y, radians, timestamp, std x, std y, std theta, tag count
+    private static final int RECORD_WIDTH = 8;
+
+    private final Drivebase drivebase;
+    private final PhotonCamera camera;
+    private final PhotonPoseEstimator poseEstimator;
+    private final AprilTagFieldLayout fieldLayout;
+    private final Notifier notifier;
+
+    private final SpscDoubleQueue queue = new SpscDoubleQueue(RECORD_WIDTH, QUEUE_CAPACITY);
+    private final double[] producerRecord = new double[RECORD_WIDTH];
+    private final double[] consumerRecord = new double[RECORD_WIDTH];
+    private final Matrix<N3, N1> stdDevs = new Matrix<>(Nat.N3(), Nat.N1());
+    private final double[] historySample = new double[PoseHistory.WIDTH];
+    private boolean hasAccepted = false;
+
+    private double lastResultTimestamp = -1;
+
+    private volatile long accepted = 0;
+    private volatile long rejectedAmbiguity = 0;
+    private volatile long rejectedDistance = 0;
+    private volatile long rejectedOutOfField = 0;
+    private volatile long rejectedJump = 0;
+
+    public Vision(Drivebase drivebase) {
+        this.drivebase = drivebase;
+        camera = new PhotonCamera(VISION_CAMERA_NAME);
+
+        AprilTagFieldLayout layout = null;
+        try {
+            layout = AprilTagFields.k2023ChargedUp.loadAprilTagLayoutField();
+        } catch (IOException e) {
+            DriverStation.reportError("Unable to load AprilTag field layout, vision disabled", e.getStackTrace());
+        }
+        fieldLayout = layout;
+
+        if (fieldLayout != null) {
+            poseEstimator = new PhotonPoseEstimator(fieldLayout, PoseStrategy.MULTI_TAG_PNP, camera, ROBOT_TO_CAMERA);
+            poseEstimator.setMultiTagFallbackStrategy(PoseStrategy.LOWEST_AMBIGUITY);
+        } else {
+            poseEstimator = null;
+        }
+
+        notifier = new Notifier(this::process);
+        notifier.setName("Vision");
+        if (poseEstimator != null) {
+            notifier.startPeriodic(LOOP_PERIOD_SECONDS);
+        }
+
+        Telemetry telemetry = Telemetry.getInstance();
+        telemetry.addDouble("Vision accepted", () -> accepted, 0.5, 0.5);
+        telemetry.addDouble("Vision rej ambiguity", () -> rejectedAmbiguity, 0.5, 0.5);
+        telemetry.addDouble("Vision rej distance", () -> rejectedDistance, 0.5, 0.5);
+        telemetry.addDouble("Vision rej field", () -> rejectedOutOfField, 0.5, 0.5);
+        telemetry.addDouble("Vision rej jump", () -> rejectedJump, 0.5, 0.5);
+    }
+
+    // Vision thread
+    private void process() {
+        PhotonPipelineResult result = camera.getLatestResult();
+        double timestamp = result.getTimestampSeconds();
+        if (timestamp == lastResultTimestamp || !result.hasTargets()) {
+            return;
+        }
+        lastResultTimestamp = timestamp;
+
+        List<PhotonTrackedTarget> targets = result.getTargets();
+        if (targets.size() == 1 && targets.get(0).getPoseAmbiguity() > VISION_MAX_AMBIGUITY) {
+            rejectedAmbiguity++;
+            return;
+        }
+
+        Optional<EstimatedRobotPose> estimate = poseEstimator.update(result);
+        if (estimate.isEmpty()) {
+            return;
+        }
+        Pose3d pose3d = estimate.get().estimatedPose;
+
+        if (pose3d.getX() < -VISION_FIELD_MARGIN_METERS
+                || pose3d.getX() > fieldLayout.getFieldLength() + VISION_FIELD_MARGIN_METERS
+                || pose3d.getY() < -VISION_FIELD_MARGIN_METERS
+                || pose3d.getY() > fieldLayout.getFieldWidth() + VISION_FIELD_MARGIN_METERS
+                || Math.abs(pose3d.getZ()) > VISION_MAX_Z_METERS) {
+            rejectedOutOfField++;
+            return;
+        }
+
+        int tagCount = 0;
+        double distanceSum = 0;
+        for (PhotonTrackedTarget target : targets) {
+            Optional<Pose3d> tagPose = fieldLayout.getTagPose(target.getFiducialId());
+            if (tagPose.isPresent()) {
+                tagCount++;
+                distanceSum += tagPose.get().getTranslation().getDistance(pose3d.getTranslation());
+            }
+        }
+        if (tagCount == 0) {
+            return;
+        }
+        double averageDistance = distanceSum / tagCount;
+        if (averageDistance > VISION_MAX_DISTANCE_METERS) {
+            rejectedDistance++;
+            return;
+        }
+
+        Pose2d pose = pose3d.toPose2d();
+        double scale = averageDistance * averageDistance / tagCount;
+        producerRecord[0] = pose.getX();
+        producerRecord[1] = pose.getY();
+        producerRecord[2] = pose.getRotation().getRadians();
+        producerRecord[3] = estimate.get().timestampSeconds;
+        producerRecord[4] = VISION_STD_DEV_XY * scale;
+        producerRecord[5] = VISION_STD_DEV_XY * scale;
+        // One tag can't be trusted for heading
+        producerRecord[6] = tagCount > 1 ? VISION_STD_DEV_THETA * scale : Double.MAX_VALUE;
+        producerRecord[7] = tagCount;
+
+        queue.offer(producerRecord);
+    }
+
+    @Override
+    protected void profiledPeriodic() {
+        while (queue.poll(consumerRecord)) {
+            // The pose history is only safe to read from the main loop, so the jump check lives here.
+            // Right after a collision odometry is the one more likely to be off, so the gate widens
+            if (consumerRecord[7] == 1 && hasAccepted
+                    && drivebase.samplePoseHistory(consumerRecord[3], historySample)
+                    && Math.hypot(consumerRecord[0] - historySample[PoseHistory.X],
+                        consumerRecord[1] - historySample[PoseHistory.Y])
+                        > VISION_MAX_JUMP_METERS * drivebase.getOdometryStdDevScale(consumerRecord[3])) {
+                rejectedJump++;
+                continue;
+            }
+
+            stdDevs.set(0, 0, consumerRecord[4]);
+            stdDevs.set(1, 0, consumerRecord[5]);
+            stdDevs.set(2, 0, consumerRecord[6]);
+            drivebase.addVisionMeasurement(
+                new Pose2d(consumerRecord[0], consumerRecord[1], new Rotation2d(consumerRecord[2])),
+                consumerRecord[3],
+                stdDevs);
+            accepted++;
+            hasAccepted = true;
+        }
+    }
+
+    public long getAcceptedCount() {
+        return accepted;
+    }
+}
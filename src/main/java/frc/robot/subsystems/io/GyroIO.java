@@ -0,0 +1,33 @@
+package frc.robot.subsystems.io;
+
+/**
+ * The gyro as Drivebase sees it. Yaw is CCW-positive like Rotation2d.
+ */
+public interface GyroIO {
+    double getYawDegrees();
+
+    double getPitchDegrees();
+
+    /** Sideways tilt, the same way the gyro reports pitch */
+    double getRollDegrees();
+
+    /** CCW-positive yaw rate */
+    double getYawRateDegreesPerSecond();
+
+    void setYaw(double degrees);
+
+    /** Robot-relative acceleration, forward, in m/s^2. NaN without an accelerometer. */
+    default double getAccelerationX() {
+        return Double.NaN;
+    }
+
+    /** Robot-relative acceleration, left, in m/s^2. NaN without an accelerometer. */
+    default double getAccelerationY() {
+        return Double.NaN;
+    }
+
+    /**
+     * Steps the simulation forward. Does nothing on real hardware.
+     */
+    default void update(double dtSeconds) {}
+}
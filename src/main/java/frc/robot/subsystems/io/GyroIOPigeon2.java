@@ -0,0 +1,61 @@
+package frc.robot.subsystems.io;
+
+import com.ctre.phoenix.sensors.WPI_Pigeon2;
+import com.ctre.phoenix.sensors.Pigeon2.AxisDirection;
+
+public class GyroIOPigeon2 implements GyroIO {
+    // Accelerometer counts are Q2.14 fixed point g
+    private static final double METERS_PER_SECOND_SQ_PER_COUNT = 9.80665 / 16384.0;
+
+    private final WPI_Pigeon2 pigeon2;
+    private final double[] rawGyro = new double[3];
+    private final short[] accelerometer = new short[3];
+
+    public GyroIOPigeon2(int id, String canbus) {
+        pigeon2 = new WPI_Pigeon2(id, canbus);
+        pigeon2.configMountPose(AxisDirection.NegativeX, AxisDirection.PositiveZ);
+    }
+
+    public WPI_Pigeon2 getPigeon() {
+        return pigeon2;
+    }
+
+    @Override
+    public double getYawDegrees() {
+        return pigeon2.getYaw();
+    }
+
+    @Override
+    public double getPitchDegrees() {
+        return pigeon2.getPitch();
+    }
+
+    @Override
+    public double getRollDegrees() {
+        return pigeon2.getRoll();
+    }
+
+    @Override
+    public double getYawRateDegreesPerSecond() {
+        pigeon2.getRawGyro(rawGyro);
+        return rawGyro[2];
+    }
+
+    // Mount pose already puts these in the robot frame, same as the yaw rate
+    @Override
+    public double getAccelerationX() {
+        pigeon2.getBiasedAccelerometer(accelerometer);
+        return accelerometer[0] * METERS_PER_SECOND_SQ_PER_COUNT;
+    }
+
+    @Override
+    public double getAccelerationY() {
+        pigeon2.getBiasedAccelerometer(accelerometer);
+        return accelerometer[1] * METERS_PER_SECOND_SQ_PER_COUNT;
+    }
+
+    @Override
+    public void setYaw(double degrees) {
+        pigeon2.setYaw(degrees);
+    }
+}
@@ -0,0 +1,71 @@
+package frc.robot.subsystems.io;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Simulated gyro that integrates the yaw rate implied by the simulated
+ * modules (least-squares rigid body rotation about the robot center).
+ */
+public class GyroIOSim implements GyroIO {
+    private final SwerveModuleIO[] modules;
+    private final double[] moduleX;
+    private final double[] moduleY;
+    private final double radiusSqSum;
+
+    private volatile double yawDegrees = 0;
+    private volatile double yawRate = 0;
+
+    public GyroIOSim(SwerveModuleIO[] modules, Translation2d[] moduleLocations) {
+        this.modules = modules;
+        moduleX = new double[modules.length];
+        moduleY = new double[modules.length];
+        double sum = 0;
+        for (int i = 0; i < modules.length; i++) {
+            moduleX[i] = moduleLocations[i].getX();
+            moduleY[i] = moduleLocations[i].getY();
+            sum += moduleX[i] * moduleX[i] + moduleY[i] * moduleY[i];
+        }
+        radiusSqSum = sum;
+    }
+
+    @Override
+    public double getYawDegrees() {
+        return yawDegrees;
+    }
+
+    @Override
+    public double getPitchDegrees() {
+        return 0;
+    }
+
+    @Override
+    public double getRollDegrees() {
+        return 0;
+    }
+
+    @Override
+    public double getYawRateDegreesPerSecond() {
+        return yawRate;
+    }
+
+    @Override
+    public void setYaw(double degrees) {
+        yawDegrees = degrees;
+    }
+
+    @Override
+    public void update(double dtSeconds) {
+        double omega = 0;
+        for (int i = 0; i < modules.length; i++) {
+            double speed = modules[i].getDriveVelocity();
+            double angle = modules[i].getSteerAngle();
+            double vx = speed * Math.cos(angle);
+            double vy = speed * Math.sin(angle);
+            omega += moduleX[i] * vy - moduleY[i] * vx;
+        }
+        omega /= radiusSqSum;
+
+        yawRate = Math.toDegrees(omega);
+        yawDegrees += yawRate * dtSeconds;
+    }
+}
@@ -0,0 +1,54 @@
+package frc.robot.subsystems.io;
+
+/**
+ * One swerve module as Drivebase sees it, so the drive loop can run against
+ * real CTRE hardware or a simulated module.
+ */
+public interface SwerveModuleIO {
+    /** Drive wheel distance in meters */
+    double getDriveDistance();
+
+    /** Drive wheel velocity in meters per second */
+    double getDriveVelocity();
+
+    /** Module angle in radians, CCW-positive */
+    double getSteerAngle();
+
+    /**
+     * @param driveVoltage open-loop drive voltage
+     * @param steerAngle target module angle in radians
+     * @param steerRate how fast the target angle is moving, radians per
+     *     second CCW, fed forward to the steer motor
+     */
+    void set(double driveVoltage, double steerAngle, double steerRate);
+
+    /**
+     * Closed-loop drive velocity on the motor controller, plus a feedforward.
+     *
+     * @param velocity target wheel speed in meters per second
+     * @param feedforwardVoltage voltage added on top of the velocity loop's output
+     * @param steerAngle target module angle in radians
+     * @param steerRate how fast the target angle is moving, radians per second CCW
+     */
+    void setVelocity(double velocity, double feedforwardVoltage, double steerAngle, double steerRate);
+
+    /** Drive motor supply current in amps */
+    default double getDriveCurrent() {
+        return 0.0;
+    }
+
+    /** Steer motor supply current in amps */
+    default double getSteerCurrent() {
+        return 0.0;
+    }
+
+    /**
+     * Caps the drive motor's supply current.
+     */
+    default void setDriveCurrentLimit(double amps) {}
+
+    /**
+     * Steps the simulation forward. Does nothing on real hardware.
+     */
+    default void update(double dtSeconds) {}
+}
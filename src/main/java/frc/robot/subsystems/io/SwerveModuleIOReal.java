@@ -0,0 +1,154 @@
+package frc.robot.subsystems.io;
+
+import com.ctre.phoenix.motorcontrol.DemandType;
+import com.ctre.phoenix.motorcontrol.SupplyCurrentLimitConfiguration;
+import com.ctre.phoenix.motorcontrol.TalonFXControlMode;
+import com.ctre.phoenix.motorcontrol.can.WPI_TalonFX;
+import com.swervedrivespecialties.swervelib.ModuleConfiguration;
+import com.swervedrivespecialties.swervelib.SwerveModule;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.system.plant.DCMotor;
+
+import static frc.robot.Constants.*;
+
+/**
+ * An SDS swerve-lib module on real Falcons and CANCoders.
+ */
+public class SwerveModuleIOReal implements SwerveModuleIO {
+    private static final double TICKS_PER_ROTATION = 2048.0;
+    private static final double NOMINAL_VOLTAGE = 12.0;
+
+    private final SwerveModule module;
+    private final WPI_TalonFX driveMotor;
+    // Drive velocity in meters per second to TalonFX ticks per 100ms
+    private final double velocityToNative;
+    // Module radians per steer motor tick, the same coefficient swerve-lib uses
+    private final double steerPositionCoefficient;
+    // Steer motor volts per module radian per second, from the Falcon's free speed
+    private final double steerKv;
+
+    public SwerveModuleIOReal(SwerveModule module, ModuleConfiguration config) {
+        this.module = module;
+        this.driveMotor = (WPI_TalonFX) module.getDriveMotor();
+
+        double metersPerTick = config.getWheelDiameter() * Math.PI * config.getDriveReduction() / TICKS_PER_ROTATION;
+        velocityToNative = 1.0 / metersPerTick / 10.0;
+        steerPositionCoefficient = 2.0 * Math.PI / TICKS_PER_ROTATION * config.getSteerReduction();
+        steerKv = NOMINAL_VOLTAGE / (DCMotor.getFalcon500(1).freeSpeedRadPerSec * config.getSteerReduction());
+
+        driveMotor.config_kP(0, DRIVE_VELOCITY_KP);
+        driveMotor.config_kI(0, DRIVE_VELOCITY_KI);
+        driveMotor.config_kD(0, DRIVE_VELOCITY_KD);
+        driveMotor.config_kF(0, 0.0);
+    }
+
+    public SwerveModule getModule() {
+        return module;
+    }
+
+    public WPI_TalonFX getDriveMotor() {
+        return driveMotor;
+    }
+
+    public WPI_TalonFX getSteerMotor() {
+        return (WPI_TalonFX) module.getSteerMotor();
+    }
+
+    @Override
+    public double getDriveDistance() {
+        return module.getDriveDistance();
+    }
+
+    @Override
+    public double getDriveVelocity() {
+        return module.getDriveVelocity();
+    }
+
+    @Override
+    public double getSteerAngle() {
+        return module.getSteerAngle();
+    }
+
+    /**
+     * Whether swerve-lib would flip this target: more than a quarter turn
+     * from where the steer motor is right now. Drivebase optimizes against
+     * the last odometry sample, which can be on the other side of 90 degrees.
+     */
+    private boolean isPastQuarterTurn(double steerAngle) {
+        return Math.abs(MathUtil.angleModulus(steerAngle - module.getSteerAngle())) > Math.PI / 2.0;
+    }
+
+    @Override
+    public void set(double driveVoltage, double steerAngle, double steerRate) {
+        // Flip here instead of in swerve-lib, so the feedforward goes to the angle it actually sent
+        if (isPastQuarterTurn(steerAngle)) {
+            steerAngle += Math.PI;
+            driveVoltage = -driveVoltage;
+        }
+        module.set(driveVoltage, steerAngle);
+        setSteerFeedforward(steerAngle, steerRate);
+    }
+
+    @Override
+    public void setVelocity(double velocity, double feedforwardVoltage, double steerAngle, double steerRate) {
+        if (isPastQuarterTurn(steerAngle)) {
+            steerAngle += Math.PI;
+            velocity = -velocity;
+            feedforwardVoltage = -feedforwardVoltage;
+        }
+        // swerve-lib still runs the steer, then the drive motor gets overridden with the velocity loop
+        module.set(feedforwardVoltage, steerAngle);
+        setSteerFeedforward(steerAngle, steerRate);
+        driveMotor.set(TalonFXControlMode.Velocity, velocity * velocityToNative,
+            DemandType.ArbitraryFeedForward, feedforwardVoltage / NOMINAL_VOLTAGE);
+    }
+
+    /**
+     * swerve-lib's steer position loop has no feedforward, so the reference
+     * it just sent is worked out again the same way, unwrapped next to the
+     * motor's current position, and re-sent with the steer rate on top.
+     * {@code steerAngle} must already be within a quarter turn, so it's the
+     * same angle swerve-lib used.
+     */
+    private void setSteerFeedforward(double steerAngle, double steerRate) {
+        double volts = MathUtil.clamp(STEER_FEEDFORWARD_GAIN * steerKv * steerRate, -NOMINAL_VOLTAGE, NOMINAL_VOLTAGE);
+        if (volts == 0.0) {
+            // swerve-lib's own setpoint is already right
+            return;
+        }
+        WPI_TalonFX steerMotor = getSteerMotor();
+        double current = steerMotor.getSelectedSensorPosition() * steerPositionCoefficient;
+        double currentMod = MathUtil.inputModulus(current, 0.0, 2.0 * Math.PI);
+        if (Math.abs(MathUtil.angleModulus(steerAngle - currentMod)) > Math.PI / 2.0) {
+            // A new position came in since the check above and swerve-lib flipped after all.
+            // Its own setpoint matches the drive output it sent, leave it for this loop.
+            return;
+        }
+        double target = MathUtil.inputModulus(steerAngle, 0.0, 2.0 * Math.PI);
+        double reference = target + current - currentMod;
+        if (target - currentMod > Math.PI) {
+            reference -= 2.0 * Math.PI;
+        } else if (target - currentMod < -Math.PI) {
+            reference += 2.0 * Math.PI;
+        }
+        steerMotor.set(TalonFXControlMode.Position, reference / steerPositionCoefficient,
+            DemandType.ArbitraryFeedForward, volts / NOMINAL_VOLTAGE);
+    }
+
+    @Override
+    public double getDriveCurrent() {
+        return driveMotor.getSupplyCurrent();
+    }
+
+    @Override
+    public double getSteerCurrent() {
+        return getSteerMotor().getSupplyCurrent();
+    }
+
+    @Override
+    public void setDriveCurrentLimit(double amps) {
+        // Same kind of limit swerve-lib sets up. No timeout, this runs in the robot loop
+        driveMotor.configSupplyCurrentLimit(new SupplyCurrentLimitConfiguration(true, amps, amps, 0.0), 0);
+    }
+}
@@ -0,0 +1,146 @@
+package frc.robot.subsystems.io;
+
+import com.swervedrivespecialties.swervelib.ModuleConfiguration;
+import com.swervedrivespecialties.swervelib.SdsModuleConfigurations;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.system.plant.DCMotor;
+
+import static frc.robot.Constants.*;
+
+/**
+ * Physics model of a swerve module, so the drive loop can run without
+ * hardware and faster than real time.
+ *
+ * The drive side is a Falcon 500 through the module gearing, pushing a
+ * quarter of the robot's mass. That is a first-order system, and it's
+ * integrated exactly, so any step size is stable. The steer side stands in
+ * for the Falcon's onboard position loop: it closes on the target with a
+ * short time constant, capped at the steer motor's free speed. The steer
+ * rate feedforward moves it along at that rate on top, so a turning target
+ * is followed without the lag.
+ *
+ * The drive supply current comes from the motor's resistance and back-EMF.
+ * Past the supply current limit, the voltage is cut back the way the
+ * TalonFX would. Steering isn't modeled electrically and draws nothing.
+ */
+public class SwerveModuleIOSim implements SwerveModuleIO {
+    public static final double ROBOT_MASS_KG = 50.0;
+    private static final double STEER_TIME_CONSTANT_SECONDS = 0.02;
+    private static final double MAX_VOLTAGE = 12.0;
+    // Stands in for the TalonFX velocity loop, volts per m/s of error
+    private static final double VELOCITY_KP = 3.0;
+
+    private final double wheelRadius;
+    private final double freeSpeedMetersPerSecondPerVolt;
+    private final double driveTimeConstant;
+    private final double driveResistance;
+    private final double maxSteerRate;
+
+    private volatile double driveDistance = 0;
+    private volatile double driveVelocity = 0;
+    private volatile double steerAngle = 0;
+
+    private double driveVoltage = 0;
+    private double targetAngle = 0;
+    private double steerRate = 0;
+
+    private boolean velocityMode = false;
+    private double targetVelocity = 0;
+    private double currentLimit = Double.POSITIVE_INFINITY;
+    private volatile double driveCurrent = 0;
+
+    public SwerveModuleIOSim() {
+        this(SdsModuleConfigurations.MK4_L2, DCMotor.getFalcon500(1), DCMotor.getFalcon500(1));
+    }
+
+    public SwerveModuleIOSim(ModuleConfiguration config, DCMotor driveMotor, DCMotor steerMotor) {
+        wheelRadius = config.getWheelDiameter() / 2.0;
+        double driveReduction = config.getDriveReduction();
+
+        freeSpeedMetersPerSecondPerVolt = driveMotor.KvRadPerSecPerVolt * driveReduction * wheelRadius;
+
+        // Quarter of the robot's mass at the wheel, reflected back to the motor shaft
+        double wheelInertia = ROBOT_MASS_KG / 4.0 * wheelRadius * wheelRadius;
+        double motorInertia = wheelInertia * driveReduction * driveReduction;
+        driveTimeConstant = motorInertia * driveMotor.rOhms * driveMotor.KvRadPerSecPerVolt / driveMotor.KtNMPerAmp;
+        driveResistance = driveMotor.rOhms;
+
+        maxSteerRate = steerMotor.freeSpeedRadPerSec * config.getSteerReduction();
+    }
+
+    @Override
+    public double getDriveDistance() {
+        return driveDistance;
+    }
+
+    @Override
+    public double getDriveVelocity() {
+        return driveVelocity;
+    }
+
+    @Override
+    public double getSteerAngle() {
+        return steerAngle;
+    }
+
+    @Override
+    public void set(double driveVoltage, double steerAngle, double steerRate) {
+        this.driveVoltage = MathUtil.clamp(driveVoltage, -MAX_VOLTAGE, MAX_VOLTAGE);
+        this.targetAngle = steerAngle;
+        this.steerRate = STEER_FEEDFORWARD_GAIN * steerRate;
+        this.velocityMode = false;
+    }
+
+    @Override
+    public void setVelocity(double velocity, double feedforwardVoltage, double steerAngle, double steerRate) {
+        this.driveVoltage = feedforwardVoltage;
+        this.targetAngle = steerAngle;
+        this.steerRate = STEER_FEEDFORWARD_GAIN * steerRate;
+        this.targetVelocity = velocity;
+        this.velocityMode = true;
+    }
+
+    @Override
+    public double getDriveCurrent() {
+        return driveCurrent;
+    }
+
+    @Override
+    public void setDriveCurrentLimit(double amps) {
+        currentLimit = amps;
+    }
+
+    // Stator current times duty cycle
+    private double supplyCurrent(double voltage, double backEmf) {
+        return voltage * (voltage - backEmf) / driveResistance / MAX_VOLTAGE;
+    }
+
+    @Override
+    public void update(double dtSeconds) {
+        double voltage = driveVoltage;
+        if (velocityMode) {
+            voltage = MathUtil.clamp(driveVoltage + VELOCITY_KP * (targetVelocity - driveVelocity), -MAX_VOLTAGE, MAX_VOLTAGE);
+        }
+
+        double backEmf = driveVelocity / freeSpeedMetersPerSecondPerVolt;
+        if (supplyCurrent(voltage, backEmf) > currentLimit) {
+            // Largest voltage that draws exactly the limit, the root on the same side as the voltage
+            double root = Math.sqrt(backEmf * backEmf + 4.0 * driveResistance * MAX_VOLTAGE * currentLimit);
+            voltage = (backEmf + Math.copySign(root, voltage)) / 2.0;
+        }
+        driveCurrent = supplyCurrent(voltage, backEmf);
+
+        // swerve-lib leaves the drive motors in brake mode, so no output slows the wheel too
+        double steadyState = voltage * freeSpeedMetersPerSecondPerVolt;
+        double velocity = driveVelocity + (steadyState - driveVelocity) * (1.0 - Math.exp(-dtSeconds / driveTimeConstant));
+        driveDistance += (driveVelocity + velocity) / 2.0 * dtSeconds;
+        driveVelocity = velocity;
+
+        // d(angle)/dt = error / tau + rate, solved exactly over the step
+        double error = MathUtil.angleModulus(targetAngle - steerAngle);
+        double step = (error + steerRate * STEER_TIME_CONSTANT_SECONDS) * (1.0 - Math.exp(-dtSeconds / STEER_TIME_CONSTANT_SECONDS));
+        step = MathUtil.clamp(step, -maxSteerRate * dtSeconds, maxSteerRate * dtSeconds);
+        steerAngle = MathUtil.inputModulus(steerAngle + step, 0, 2 * Math.PI);
+    }
+}
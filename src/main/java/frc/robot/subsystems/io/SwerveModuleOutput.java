@@ -0,0 +1,109 @@
+package frc.robot.subsystems.io;
+
+import static frc.robot.Constants.*;
+
+import edu.wpi.first.math.MathUtil;
+
+/**
+ * Sits between Drivebase and one module's setpoint calls, and drops the
+ * ones that wouldn't change anything.
+ *
+ * The last setpoint actually sent is cached. A new one only goes through
+ * when the mode changed, any value moved past its OUTPUT_*_TOLERANCE, or
+ * OUTPUT_KEEP_ALIVE_SECONDS went by since the last send. The keep-alive
+ * keeps swerve-lib's steer encoder re-sync, which runs inside set(),
+ * ticking over while the robot sits still.
+ *
+ * swerve-lib only takes drive and steer together, so both motors of a
+ * module are sent or skipped as a pair.
+ */
+public class SwerveModuleOutput {
+    private enum Mode {
+        NONE,
+        VOLTAGE,
+        VELOCITY
+    }
+
+    private final SwerveModuleIO module;
+
+    private Mode lastMode = Mode.NONE;
+    private double lastDrive;
+    private double lastFeedforward;
+    private double lastAngle;
+    private double lastSteerRate;
+    private double lastSendTime = Double.NaN;
+
+    private long sent = 0;
+    private long suppressed = 0;
+
+    public SwerveModuleOutput(SwerveModuleIO module) {
+        this.module = module;
+    }
+
+    /**
+     * {@link SwerveModuleIO#set(double, double, double)}, unless it's the same as last time.
+     */
+    public void set(double driveVoltage, double steerAngle, double steerRate, double now) {
+        if (lastMode == Mode.VOLTAGE
+                && Math.abs(driveVoltage - lastDrive) < OUTPUT_VOLTAGE_TOLERANCE
+                && unchanged(steerAngle, steerRate, now)) {
+            suppressed++;
+            return;
+        }
+        module.set(driveVoltage, steerAngle, steerRate);
+        sent(Mode.VOLTAGE, driveVoltage, 0.0, steerAngle, steerRate, now);
+    }
+
+    /**
+     * {@link SwerveModuleIO#setVelocity(double, double, double, double)}, unless it's the same as last time.
+     */
+    public void setVelocity(double velocity, double feedforwardVoltage, double steerAngle, double steerRate, double now) {
+        if (lastMode == Mode.VELOCITY
+                && Math.abs(velocity - lastDrive) < OUTPUT_VELOCITY_TOLERANCE
+                && Math.abs(feedforwardVoltage - lastFeedforward) < OUTPUT_VOLTAGE_TOLERANCE
+                && unchanged(steerAngle, steerRate, now)) {
+            suppressed++;
+            return;
+        }
+        module.setVelocity(velocity, feedforwardVoltage, steerAngle, steerRate);
+        sent(Mode.VELOCITY, velocity, feedforwardVoltage, steerAngle, steerRate, now);
+    }
+
+    private boolean unchanged(double steerAngle, double steerRate, double now) {
+        return Math.abs(MathUtil.angleModulus(steerAngle - lastAngle)) < OUTPUT_ANGLE_TOLERANCE
+            && Math.abs(steerRate - lastSteerRate) < OUTPUT_STEER_RATE_TOLERANCE
+            && now - lastSendTime < OUTPUT_KEEP_ALIVE_SECONDS;
+    }
+
+    private void sent(Mode mode, double drive, double feedforward, double angle, double steerRate, double now) {
+        lastMode = mode;
+        lastDrive = drive;
+        lastFeedforward = feedforward;
+        lastAngle = angle;
+        lastSteerRate = steerRate;
+        lastSendTime = now;
+        sent++;
+    }
+
+    /**
+     * Makes the next setpoint go through whatever it is, e.g. after the
+     * motor controller lost its state.
+     */
+    public void invalidate() {
+        lastMode = Mode.NONE;
+    }
+
+    public SwerveModuleIO getModule() {
+        return module;
+    }
+
+    /** Setpoints passed on to the module */
+    public long getSentCount() {
+        return sent;
+    }
+
+    /** Setpoints dropped as unchanged */
+    public long getSuppressedCount() {
+        return suppressed;
+    }
+}
@@ -0,0 +1,27 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+
+/**
+ * Mirrors blue alliance field poses for the red alliance. The 2023 field is
+ * mirrored across its length, so only y and the rotation change, the same
+ * transform PathPlanner applies to paths.
+ */
+public final class AllianceFlip {
+    public static final double FIELD_WIDTH_METERS = 8.02;
+
+    private AllianceFlip() {}
+
+    public static Pose2d mirror(Pose2d bluePose) {
+        return new Pose2d(bluePose.getX(), FIELD_WIDTH_METERS - bluePose.getY(), bluePose.getRotation().unaryMinus());
+    }
+
+    /**
+     * {@code bluePose} as seen by our current alliance.
+     */
+    public static Pose2d forAlliance(Pose2d bluePose) {
+        return DriverStation.getAlliance() == Alliance.Red ? mirror(bluePose) : bluePose;
+    }
+}
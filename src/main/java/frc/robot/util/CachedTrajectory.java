@@ -0,0 +1,133 @@
+package frc.robot.util;
+
+import java.nio.FloatBuffer;
+import java.util.List;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/**
+ * One pre-sampled path from a {@link TrajectoryCache}. The samples stay in
+ * the memory-mapped cache file and are read through a FloatBuffer view,
+ * so the only heap this takes is the markers and stop events.
+ *
+ * Samples are stored for the blue alliance. Pass {@code red} to mirror
+ * them across the field on the fly, the same way PathPlanner does.
+ */
+public class CachedTrajectory {
+    // Layout of each sample, and of the array filled by sample()
+    public static final int X = 0;
+    public static final int Y = 1;
+    // Direction of travel
+    public static final int HEADING = 2;
+    public static final int VELOCITY = 3;
+    public static final int ACCELERATION = 4;
+    // Where the robot is facing
+    public static final int ROTATION = 5;
+    public static final int ROTATION_RATE = 6;
+    public static final int WIDTH = 7;
+
+    /**
+     * A PathPlanner stop event, with the behaviors kept as their enum names.
+     */
+    public static class StopEvent {
+        public final List<String> names;
+        public final String executionBehavior;
+        public final String waitBehavior;
+        public final double waitTime;
+
+        public StopEvent(List<String> names, String executionBehavior, String waitBehavior, double waitTime) {
+            this.names = names;
+            this.executionBehavior = executionBehavior;
+            this.waitBehavior = waitBehavior;
+            this.waitTime = waitTime;
+        }
+    }
+
+    private final double dt;
+    private final int sampleCount;
+    private final FloatBuffer samples;
+
+    private final double[] markerTimes;
+    private final List<List<String>> markerNames;
+    private final StopEvent startEvent;
+    private final StopEvent endEvent;
+
+    public CachedTrajectory(double dt, int sampleCount, FloatBuffer samples,
+                            double[] markerTimes, List<List<String>> markerNames,
+                            StopEvent startEvent, StopEvent endEvent) {
+        this.dt = dt;
+        this.sampleCount = sampleCount;
+        this.samples = samples;
+        this.markerTimes = markerTimes;
+        this.markerNames = markerNames;
+        this.startEvent = startEvent;
+        this.endEvent = endEvent;
+    }
+
+    public double getTotalTimeSeconds() {
+        return (sampleCount - 1) * dt;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public int getMarkerCount() {
+        return markerTimes.length;
+    }
+
+    public double getMarkerTime(int i) {
+        return markerTimes[i];
+    }
+
+    public List<String> getMarkerNames(int i) {
+        return markerNames.get(i);
+    }
+
+    public StopEvent getStartEvent() {
+        return startEvent;
+    }
+
+    public StopEvent getEndEvent() {
+        return endEvent;
+    }
+
+    /**
+     * Fills {@code out} (at least {@link #WIDTH} long) with the state at
+     * {@code t} seconds, interpolated between the fixed-step samples and
+     * clamped to the ends of the path.
+     */
+    public void sample(double t, boolean red, double[] out) {
+        double index = MathUtil.clamp(t / dt, 0, sampleCount - 1);
+        int a = (int) index;
+        int b = Math.min(a + 1, sampleCount - 1);
+        double frac = index - a;
+        int baseA = a * WIDTH;
+        int baseB = b * WIDTH;
+
+        for (int i = 0; i < WIDTH; i++) {
+            double va = samples.get(baseA + i);
+            double vb = samples.get(baseB + i);
+            if (i == HEADING || i == ROTATION) {
+                out[i] = MathUtil.angleModulus(va + MathUtil.angleModulus(vb - va) * frac);
+            } else {
+                out[i] = va + (vb - va) * frac;
+            }
+        }
+
+        if (red) {
+            out[Y] = AllianceFlip.FIELD_WIDTH_METERS - out[Y];
+            out[HEADING] = -out[HEADING];
+            out[ROTATION] = -out[ROTATION];
+            out[ROTATION_RATE] = -out[ROTATION_RATE];
+        }
+    }
+
+    public Pose2d getInitialPose(boolean red) {
+        double[] state = new double[WIDTH];
+        sample(0, red, state);
+        return new Pose2d(state[X], state[Y], new Rotation2d(state[ROTATION]));
+    }
+}
@@ -0,0 +1,402 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ctre.phoenix.motorcontrol.ControlFrame;
+import com.ctre.phoenix.motorcontrol.StatusFrameEnhanced;
+import com.ctre.phoenix.motorcontrol.can.WPI_TalonFX;
+import com.ctre.phoenix.sensors.PigeonIMU_StatusFrame;
+import com.ctre.phoenix.sensors.WPI_Pigeon2;
+
+import edu.wpi.first.hal.can.CANStatus;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+import frc.team5431.titan.core.misc.Logger;
+
+/**
+ * Sets the status frame periods of the drivetrain's CTRE devices by what
+ * they're used for, so the bus only carries what something actually reads.
+ *
+ * Frames odometry samples (drive and steer position, Pigeon yaw) are sent
+ * as fast as the odometry thread reads them while enabled, but never faster
+ * than every 10ms on the roboRIO bus: at 4ms the enabled table came to about
+ * 2.7k frames/s, more than the ~2.3k of the factory periods, on a 1 Mbit bus
+ * shared with everything else. Drivebase slows the odometry thread to match
+ * with {@link #getFastPeriodMs()}. Frames something
+ * else reads get a moderate rate, and frames nothing reads are pushed to the
+ * slowest period CTRE allows. Disabled, everything drops back. Devices that
+ * reset (brownout, reflash) lose their settings, so those get re-applied.
+ *
+ * On the roboRIO bus, the first time the robot is enabled, utilization is
+ * measured for a few seconds with the factory periods put back, then again
+ * with ours. Both windows see enabled traffic, which is where the headroom
+ * matters, and both are logged alongside the frames/sec the two tables add
+ * up to. Disabling partway starts it over at the next enable. Phoenix 5
+ * can't read CANivore utilization, so there only the estimate is logged.
+ */
+public class CanBusManager {
+    public enum Role {
+        DRIVE,
+        STEER
+    }
+
+    // Slowest period status frames can be set to
+    private static final int UNUSED_MS = 255;
+    private static final double MEASURE_SECONDS = 3.0;
+    private static final double RESET_CHECK_SECONDS = 1.0;
+    // Fastest any frame goes on the roboRIO bus
+    private static final int RIO_FASTEST_MS = 10;
+    // Extended frame with an 8 byte payload and worst-case stuffing
+    private static final double BITS_PER_FRAME = 160.0;
+    private static final double BITS_PER_SECOND = 1e6;
+
+    // Periods before this runs, for the before estimate: CTRE's documented
+    // factory periods, except General, which swerve-lib already slows to 250ms
+    private static final Map<StatusFrameEnhanced, Integer> TALON_DEFAULTS = new EnumMap<>(StatusFrameEnhanced.class);
+    private static final Map<PigeonIMU_StatusFrame, Integer> PIGEON_DEFAULTS = new EnumMap<>(PigeonIMU_StatusFrame.class);
+    private static final int DEFAULT_CONTROL_MS = 10;
+    static {
+        TALON_DEFAULTS.put(StatusFrameEnhanced.Status_1_General, 250);
+        TALON_DEFAULTS.put(StatusFrameEnhanced.Status_2_Feedback0, 20);
+        TALON_DEFAULTS.put(StatusFrameEnhanced.Status_3_Quadrature, 160);
+        TALON_DEFAULTS.put(StatusFrameEnhanced.Status_4_AinTempVbat, 160);
+        TALON_DEFAULTS.put(StatusFrameEnhanced.Status_8_PulseWidth, 160);
+        TALON_DEFAULTS.put(StatusFrameEnhanced.Status_10_Targets, 160);
+        TALON_DEFAULTS.put(StatusFrameEnhanced.Status_12_Feedback1, 160);
+        TALON_DEFAULTS.put(StatusFrameEnhanced.Status_13_Base_PIDF0, 160);
+        TALON_DEFAULTS.put(StatusFrameEnhanced.Status_14_Turn_PIDF1, 160);
+        TALON_DEFAULTS.put(StatusFrameEnhanced.Status_21_FeedbackIntegrated, 160);
+        TALON_DEFAULTS.put(StatusFrameEnhanced.Status_Brushless_Current, 50);
+
+        PIGEON_DEFAULTS.put(PigeonIMU_StatusFrame.CondStatus_1_General, 10);
+        PIGEON_DEFAULTS.put(PigeonIMU_StatusFrame.CondStatus_9_SixDeg_YPR, 10);
+        PIGEON_DEFAULTS.put(PigeonIMU_StatusFrame.CondStatus_6_SensorFusion, 10);
+        PIGEON_DEFAULTS.put(PigeonIMU_StatusFrame.CondStatus_11_GyroAccum, 20);
+        PIGEON_DEFAULTS.put(PigeonIMU_StatusFrame.CondStatus_2_GeneralCompass, 100);
+        PIGEON_DEFAULTS.put(PigeonIMU_StatusFrame.CondStatus_3_GeneralAccel, 100);
+        PIGEON_DEFAULTS.put(PigeonIMU_StatusFrame.CondStatus_10_SixDeg_Quat, 100);
+        PIGEON_DEFAULTS.put(PigeonIMU_StatusFrame.RawStatus_4_Mag, 100);
+        PIGEON_DEFAULTS.put(PigeonIMU_StatusFrame.BiasedStatus_2_Gyro, 100);
+        PIGEON_DEFAULTS.put(PigeonIMU_StatusFrame.BiasedStatus_4_Mag, 100);
+        PIGEON_DEFAULTS.put(PigeonIMU_StatusFrame.BiasedStatus_6_Accel, 100);
+    }
+
+    private static class Talon {
+        final WPI_TalonFX motor;
+        final Role role;
+        final Runnable onReset;
+
+        Talon(WPI_TalonFX motor, Role role, Runnable onReset) {
+            this.motor = motor;
+            this.role = role;
+            this.onReset = onReset;
+        }
+    }
+
+    private final List<Talon> talons = new ArrayList<>();
+    private WPI_Pigeon2 pigeon;
+    private final boolean rioBus;
+    // Odometry frames, what the odometry thread should sample at
+    private final int fastPeriodMs;
+
+    private final Map<StatusFrameEnhanced, Integer> talonPeriods = new EnumMap<>(StatusFrameEnhanced.class);
+    private final Map<PigeonIMU_StatusFrame, Integer> pigeonPeriods = new EnumMap<>(PigeonIMU_StatusFrame.class);
+
+    private enum Phase {
+        WAITING_FOR_ENABLE,
+        MEASURING_DEFAULTS,
+        MEASURING_MANAGED,
+        DONE
+    }
+
+    private Phase phase;
+    private double phaseStart = Double.NaN;
+    private double utilizationSum = 0;
+    private int utilizationCount = 0;
+    private double defaultUtilization = Double.NaN;
+    private double utilization = Double.NaN;
+
+    private Boolean appliedEnabled = null;
+    private double lastResetCheck = Double.NaN;
+    private long reapplied = 0;
+
+    /**
+     * @param canbus the bus the devices are on, "rio" for the roboRIO's own
+     * @param odometryFrequencyHz how often the odometry thread reads the devices
+     */
+    public CanBusManager(String canbus, double odometryFrequencyHz) {
+        rioBus = "rio".equals(canbus) || canbus.isEmpty();
+        int odometryPeriodMs = Math.max(1, (int) Math.ceil(1000.0 / odometryFrequencyHz));
+        fastPeriodMs = rioBus ? Math.max(odometryPeriodMs, RIO_FASTEST_MS) : odometryPeriodMs;
+        // Nothing to measure on a CANivore, go straight to our periods
+        phase = rioBus ? Phase.WAITING_FOR_ENABLE : Phase.DONE;
+    }
+
+    /**
+     * @param onReset run after the Talon reset and its frames were re-applied,
+     * for anything else that assumed state it lost
+     */
+    public void addTalon(WPI_TalonFX motor, Role role, Runnable onReset) {
+        talons.add(new Talon(motor, role, onReset));
+    }
+
+    public void setPigeon(WPI_Pigeon2 pigeon) {
+        this.pigeon = pigeon;
+    }
+
+    /**
+     * Period of the frames odometry reads while enabled. Sampling faster
+     * than this only reads the same values again.
+     */
+    public int getFastPeriodMs() {
+        return fastPeriodMs;
+    }
+
+    /**
+     * Periods for one Talon. Fills the map so the same table both applies
+     * the periods and estimates the frame rate.
+     */
+    private void talonPeriods(Role role, boolean enabled, Map<StatusFrameEnhanced, Integer> out) {
+        for (StatusFrameEnhanced frame : TALON_DEFAULTS.keySet()) {
+            out.put(frame, UNUSED_MS);
+        }
+        // Selected sensor position and velocity, what odometry and swerve-lib read
+        int feedback = role == Role.DRIVE ? fastPeriodMs : Math.max(fastPeriodMs, 10);
+        out.put(StatusFrameEnhanced.Status_2_Feedback0, enabled ? feedback : 20);
+        // Bus voltage and temperature
+        out.put(StatusFrameEnhanced.Status_4_AinTempVbat, enabled ? 100 : UNUSED_MS);
+        // Stator and supply current
+        out.put(StatusFrameEnhanced.Status_Brushless_Current, enabled ? 50 : UNUSED_MS);
+    }
+
+    private void pigeonPeriods(boolean enabled, Map<PigeonIMU_StatusFrame, Integer> out) {
+        for (PigeonIMU_StatusFrame frame : PIGEON_DEFAULTS.keySet()) {
+            out.put(frame, UNUSED_MS);
+        }
+        out.put(PigeonIMU_StatusFrame.CondStatus_1_General, 100);
+        // Yaw and pitch, yaw goes into every odometry sample
+        out.put(PigeonIMU_StatusFrame.CondStatus_9_SixDeg_YPR, enabled ? fastPeriodMs : 20);
+        // Yaw rate for the heading lock, acceleration for slip and collision checks
+        out.put(PigeonIMU_StatusFrame.BiasedStatus_2_Gyro, enabled ? 20 : 100);
+        out.put(PigeonIMU_StatusFrame.BiasedStatus_6_Accel, enabled ? 20 : 100);
+    }
+
+    private void apply(boolean enabled) {
+        for (Talon talon : talons) {
+            applyTalon(talon, enabled);
+        }
+        if (pigeon != null) {
+            applyPigeon(enabled);
+        }
+        appliedEnabled = enabled;
+    }
+
+    private void applyTalon(Talon talon, boolean enabled) {
+        talonPeriods(talon.role, enabled, talonPeriods);
+        for (Map.Entry<StatusFrameEnhanced, Integer> period : talonPeriods.entrySet()) {
+            // No timeout, this runs in the robot loop
+            talon.motor.setStatusFramePeriod(period.getKey(), period.getValue(), 0);
+        }
+        // The robot loop only sets new outputs every 20ms anyway
+        talon.motor.setControlFramePeriod(ControlFrame.Control_3_General, 20);
+    }
+
+    // Back to the periods the before measurement is of
+    private void applyDefaults() {
+        for (Talon talon : talons) {
+            for (Map.Entry<StatusFrameEnhanced, Integer> period : TALON_DEFAULTS.entrySet()) {
+                talon.motor.setStatusFramePeriod(period.getKey(), period.getValue(), 0);
+            }
+            talon.motor.setControlFramePeriod(ControlFrame.Control_3_General, DEFAULT_CONTROL_MS);
+        }
+        if (pigeon != null) {
+            for (Map.Entry<PigeonIMU_StatusFrame, Integer> period : PIGEON_DEFAULTS.entrySet()) {
+                pigeon.setStatusFramePeriod(period.getKey(), period.getValue(), 0);
+            }
+        }
+        appliedEnabled = null;
+    }
+
+    private void applyPigeon(boolean enabled) {
+        pigeonPeriods(enabled, pigeonPeriods);
+        for (Map.Entry<PigeonIMU_StatusFrame, Integer> period : pigeonPeriods.entrySet()) {
+            pigeon.setStatusFramePeriod(period.getKey(), period.getValue(), 0);
+        }
+    }
+
+    /**
+     * Call every loop. Applies the periods for the current robot state, and
+     * runs the before/after measurement on the roboRIO bus.
+     */
+    public void update() {
+        double now = Timer.getFPGATimestamp();
+        boolean enabled = DriverStation.isEnabled();
+
+        if (rioBus) {
+            measure(now, enabled);
+        }
+        if (phase == Phase.MEASURING_DEFAULTS) {
+            // The factory periods are what's being measured, and a device
+            // that reset is back on them anyway
+            return;
+        }
+
+        if (appliedEnabled == null) {
+            apply(enabled);
+            if (!rioBus) {
+                logReport();
+            }
+        } else if (appliedEnabled != enabled) {
+            apply(enabled);
+        }
+
+        if (!(now - lastResetCheck < RESET_CHECK_SECONDS)) {
+            lastResetCheck = now;
+            for (Talon talon : talons) {
+                if (talon.motor.hasResetOccurred()) {
+                    applyTalon(talon, enabled);
+                    talon.onReset.run();
+                    reapplied++;
+                    Logger.l("TalonFX " + talon.motor.getDeviceID() + " reset, re-applied its status frames");
+                }
+            }
+            if (pigeon != null && pigeon.hasResetOccurred()) {
+                applyPigeon(enabled);
+                reapplied++;
+                Logger.l("Pigeon 2 reset, re-applied its status frames");
+            }
+        }
+    }
+
+    /**
+     * Averages roboRIO bus utilization over MEASURE_SECONDS windows. On the
+     * first enable the first window is on the factory periods and the next
+     * on ours; after that each window just updates {@link #getUtilization()}.
+     */
+    private void measure(double now, boolean enabled) {
+        if (phase == Phase.WAITING_FOR_ENABLE) {
+            if (!enabled) {
+                return;
+            }
+            applyDefaults();
+            phase = Phase.MEASURING_DEFAULTS;
+            startWindow(now);
+            return;
+        }
+        if (phase != Phase.DONE && !enabled) {
+            // Disabled windows say nothing about enabled headroom, wait for the next enable.
+            // update() puts the disabled periods back
+            phase = Phase.WAITING_FOR_ENABLE;
+            appliedEnabled = null;
+            return;
+        }
+
+        CANStatus status = RobotController.getCANStatus();
+        utilizationSum += status.percentBusUtilization;
+        utilizationCount++;
+        if (Double.isNaN(phaseStart)) {
+            startWindow(now);
+        }
+        if (now - phaseStart < MEASURE_SECONDS) {
+            return;
+        }
+        double average = utilizationSum / utilizationCount;
+        startWindow(now);
+        if (phase == Phase.MEASURING_DEFAULTS) {
+            defaultUtilization = average;
+            phase = Phase.MEASURING_MANAGED;
+        } else {
+            utilization = average;
+            if (phase == Phase.MEASURING_MANAGED) {
+                phase = Phase.DONE;
+                logReport();
+            }
+        }
+    }
+
+    private void startWindow(double now) {
+        utilizationSum = 0;
+        utilizationCount = 0;
+        phaseStart = now;
+    }
+
+    /**
+     * Status and control frames per second the drivetrain devices send with
+     * CTRE's factory periods.
+     */
+    public double getDefaultFramesPerSecond() {
+        double fps = 0;
+        for (int i = 0; i < talons.size(); i++) {
+            fps += framesPerSecond(TALON_DEFAULTS) + 1000.0 / DEFAULT_CONTROL_MS;
+        }
+        if (pigeon != null) {
+            fps += framesPerSecond(PIGEON_DEFAULTS);
+        }
+        return fps;
+    }
+
+    /**
+     * Same, with the periods this sets for {@code enabled}.
+     */
+    public double getManagedFramesPerSecond(boolean enabled) {
+        Map<StatusFrameEnhanced, Integer> talonTable = new EnumMap<>(StatusFrameEnhanced.class);
+        Map<PigeonIMU_StatusFrame, Integer> pigeonTable = new EnumMap<>(PigeonIMU_StatusFrame.class);
+        double fps = 0;
+        for (Talon talon : talons) {
+            talonPeriods(talon.role, enabled, talonTable);
+            fps += framesPerSecond(talonTable) + 1000.0 / 20;
+        }
+        if (pigeon != null) {
+            pigeonPeriods(enabled, pigeonTable);
+            fps += framesPerSecond(pigeonTable);
+        }
+        return fps;
+    }
+
+    private static double framesPerSecond(Map<?, Integer> periods) {
+        double fps = 0;
+        for (int period : periods.values()) {
+            fps += 1000.0 / period;
+        }
+        return fps;
+    }
+
+    private static double toUtilization(double framesPerSecond) {
+        return framesPerSecond * BITS_PER_FRAME / BITS_PER_SECOND;
+    }
+
+    private void logReport() {
+        double before = getDefaultFramesPerSecond();
+        double enabled = getManagedFramesPerSecond(true);
+        double disabled = getManagedFramesPerSecond(false);
+        Logger.l(String.format(
+            "CAN frames/s from the drivetrain: %.0f factory (~%.0f%% of the bus), %.0f enabled (~%.0f%%), %.0f disabled (~%.0f%%)",
+            before, toUtilization(before) * 100, enabled, toUtilization(enabled) * 100, disabled, toUtilization(disabled) * 100));
+        if (rioBus) {
+            Logger.l(String.format("CAN bus measured on first enable: %.0f%% at factory periods, %.0f%% managed",
+                defaultUtilization * 100, utilization * 100));
+        }
+    }
+
+    /**
+     * Average roboRIO bus utilization, 0 to 1, over the last measurement
+     * window. NaN on a CANivore or until the first enable has been measured.
+     */
+    public double getUtilization() {
+        return utilization;
+    }
+
+    /** Same, measured with the factory periods before ours were applied. */
+    public double getDefaultUtilization() {
+        return defaultUtilization;
+    }
+
+    /** Times a device reset and had its periods put back. */
+    public long getReappliedCount() {
+        return reapplied;
+    }
+}
@@ -0,0 +1,178 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Spots collisions, so wheel odometry can be trusted less right after them.
+ *
+ * Every odometry sample, the full twist (vx, vy, omega) is fit by least
+ * squares to the four wheel speeds along their rolling directions, with the
+ * gyro yaw rate in as a heavily weighted fifth row. A rigid robot with
+ * gripping wheels fits almost exactly. When the fit leaves a large RMS
+ * residual, or the accelerometer sees a spike, that counts as a hit. For
+ * {@code holdSeconds} after the last hit, {@link #getStdDevScale(double)}
+ * ramps from {@code maxStdDevScale} back down to 1.
+ */
+public class CollisionDetector {
+    // The gyro doesn't skid, so it outweighs the wheels on omega
+    private static final double GYRO_WEIGHT = 4.0;
+    // Keeps the fit solvable when every wheel points the same way
+    private static final double RIDGE = 1e-3;
+
+    private final int n;
+    private final double[] moduleX;
+    private final double[] moduleY;
+    private final double residualThreshold;
+    private final double accelerationThreshold;
+    private final double holdSeconds;
+    private final double maxStdDevScale;
+
+    private double vx;
+    private double vy;
+    private double omega;
+    private double residual;
+    private double lastHit = Double.NaN;
+    private long hits = 0;
+
+    /**
+     * @param residualThreshold RMS wheel speed residual, m/s, that counts as a hit
+     * @param accelerationThreshold acceleration, m/s^2, that counts as a hit
+     * @param holdSeconds how long odometry stays distrusted after a hit
+     * @param maxStdDevScale how much odometry std-devs grow right at a hit
+     */
+    public CollisionDetector(double residualThreshold, double accelerationThreshold,
+                             double holdSeconds, double maxStdDevScale, Translation2d... moduleLocations) {
+        n = moduleLocations.length;
+        moduleX = new double[n];
+        moduleY = new double[n];
+        for (int i = 0; i < n; i++) {
+            moduleX[i] = moduleLocations[i].getX();
+            moduleY[i] = moduleLocations[i].getY();
+        }
+        this.residualThreshold = residualThreshold;
+        this.accelerationThreshold = accelerationThreshold;
+        this.holdSeconds = holdSeconds;
+        this.maxStdDevScale = maxStdDevScale;
+    }
+
+    /**
+     * @param speeds measured module speeds, m/s
+     * @param angles measured module angles, radians
+     * @param gyroOmega gyro yaw rate, rad/s CCW
+     */
+    public void update(double timestampSeconds, double[] speeds, double[] angles, double gyroOmega) {
+        // Normal equations, symmetric so only the upper triangle
+        double a00 = RIDGE;
+        double a01 = 0;
+        double a02 = 0;
+        double a11 = RIDGE;
+        double a12 = 0;
+        double a22 = GYRO_WEIGHT;
+        double b0 = 0;
+        double b1 = 0;
+        double b2 = GYRO_WEIGHT * gyroOmega;
+        for (int i = 0; i < n; i++) {
+            double c = Math.cos(angles[i]);
+            double s = Math.sin(angles[i]);
+            double r = moduleX[i] * s - moduleY[i] * c;
+            a00 += c * c;
+            a01 += c * s;
+            a02 += c * r;
+            a11 += s * s;
+            a12 += s * r;
+            a22 += r * r;
+            b0 += c * speeds[i];
+            b1 += s * speeds[i];
+            b2 += r * speeds[i];
+        }
+
+        // Cramer's rule
+        double c00 = a11 * a22 - a12 * a12;
+        double c01 = a02 * a12 - a01 * a22;
+        double c02 = a01 * a12 - a02 * a11;
+        double det = a00 * c00 + a01 * c01 + a02 * c02;
+        double c11 = a00 * a22 - a02 * a02;
+        double c12 = a01 * a02 - a00 * a12;
+        double c22 = a00 * a11 - a01 * a01;
+        vx = (c00 * b0 + c01 * b1 + c02 * b2) / det;
+        vy = (c01 * b0 + c11 * b1 + c12 * b2) / det;
+        omega = (c02 * b0 + c12 * b1 + c22 * b2) / det;
+
+        double sumSq = 0;
+        for (int i = 0; i < n; i++) {
+            double c = Math.cos(angles[i]);
+            double s = Math.sin(angles[i]);
+            double fitted = vx * c + vy * s + omega * (moduleX[i] * s - moduleY[i] * c);
+            double error = speeds[i] - fitted;
+            sumSq += error * error;
+        }
+        residual = Math.sqrt(sumSq / n);
+
+        if (residual > residualThreshold) {
+            hit(timestampSeconds);
+        }
+    }
+
+    /**
+     * Pass NaN when there's no accelerometer or it can't be trusted.
+     *
+     * @param ax robot-relative acceleration, m/s^2
+     * @param ay robot-relative acceleration, m/s^2
+     */
+    public void updateAcceleration(double timestampSeconds, double ax, double ay) {
+        if (Math.hypot(ax, ay) > accelerationThreshold) {
+            hit(timestampSeconds);
+        }
+    }
+
+    private void hit(double timestampSeconds) {
+        if (!isColliding(timestampSeconds)) {
+            hits++;
+        }
+        lastHit = timestampSeconds;
+    }
+
+    public boolean isColliding(double timestampSeconds) {
+        return timestampSeconds - lastHit < holdSeconds;
+    }
+
+    /**
+     * How much to grow the odometry std-devs at a timestamp: 1 normally,
+     * up to maxStdDevScale right after a hit.
+     */
+    public double getStdDevScale(double timestampSeconds) {
+        double since = timestampSeconds - lastHit;
+        if (!(since >= 0 && since < holdSeconds)) {
+            return 1.0;
+        }
+        return 1.0 + (maxStdDevScale - 1.0) * (1.0 - since / holdSeconds);
+    }
+
+    /** RMS wheel speed residual of the last fit, m/s */
+    public double getResidual() {
+        return residual;
+    }
+
+    /** Fitted robot-relative twist from the last update */
+    public double getVx() {
+        return vx;
+    }
+
+    public double getVy() {
+        return vy;
+    }
+
+    public double getOmega() {
+        return omega;
+    }
+
+    /** Separate collisions seen so far */
+    public long getHitCount() {
+        return hits;
+    }
+
+    public void reset() {
+        lastHit = Double.NaN;
+        residual = 0;
+    }
+}
@@ -0,0 +1,89 @@
+package frc.robot.util;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+import frc.robot.subsystems.DrivebaseLog;
+
+/**
+ * Desktop tool that turns the drivetrain entries of a .wpilog into CSV for
+ * post-match analysis. One row per record: time in seconds, entry name,
+ * then the values.
+ *
+ * ./gradlew replayDrivetrainLog -Plog=FRC_2023xxxx.wpilog [-Pout=drive.csv]
+ */
+public final class DrivetrainLogReplay {
+    private DrivetrainLogReplay() {}
+
+    public static void main(String... args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: DrivetrainLogReplay <log.wpilog> [out.csv]");
+            System.exit(1);
+        }
+
+        DataLogReader reader = new DataLogReader(args[0]);
+        if (!reader.isValid()) {
+            System.err.println(args[0] + " is not a valid DataLog file");
+            System.exit(1);
+        }
+
+        PrintStream out = args.length > 1 ? new PrintStream(args[1]) : System.out;
+        Map<Integer, String> names = new HashMap<>();
+        Map<Integer, String> types = new HashMap<>();
+        Map<String, Integer> counts = new TreeMap<>();
+        long first = -1;
+        long last = -1;
+
+        out.println("time,entry,values");
+        for (DataLogRecord record : reader) {
+            if (record.isStart()) {
+                DataLogRecord.StartRecordData start = record.getStartData();
+                if (start.name.startsWith(DrivebaseLog.PREFIX)) {
+                    names.put(start.entry, start.name.substring(DrivebaseLog.PREFIX.length()));
+                    types.put(start.entry, start.type);
+                }
+                continue;
+            }
+            if (record.isControl()) {
+                continue;
+            }
+
+            String name = names.get(record.getEntry());
+            if (name == null) {
+                continue;
+            }
+
+            long timestamp = record.getTimestamp();
+            if (first < 0) {
+                first = timestamp;
+            }
+            last = timestamp;
+            counts.merge(name, 1, Integer::sum);
+
+            StringBuilder row = new StringBuilder();
+            row.append(timestamp / 1e6).append(',').append(name);
+            if ("double[]".equals(types.get(record.getEntry()))) {
+                for (double value : record.getDoubleArray()) {
+                    row.append(',').append(value);
+                }
+            } else {
+                row.append(',').append(record.getDouble());
+            }
+            out.println(row);
+        }
+
+        if (out != System.out) {
+            out.close();
+        }
+
+        System.err.printf("%.1f s of drivetrain data%n", first < 0 ? 0.0 : (last - first) / 1e6);
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            System.err.println("  " + count.getKey() + ": " + count.getValue() + " records");
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package frc.robot.util;
+
+/**
+ * Least-squares fit of V = kS * sign(v) + kV * v + kA * a.
+ *
+ * Samples are folded into the normal equations as they come in, so adding
+ * one doesn't allocate and any number of them can be fit.
+ */
+public class FeedforwardFit {
+    // Below this speed the sign of v is noise, so samples don't tell us anything about kS
+    private static final double MIN_VELOCITY = 0.05;
+
+    private final double[][] xtx = new double[3][3];
+    private final double[] xty = new double[3];
+    private final double[] x = new double[3];
+    private double ySum = 0;
+    private double ySqSum = 0;
+    private int count = 0;
+
+    private double kS = Double.NaN;
+    private double kV = Double.NaN;
+    private double kA = Double.NaN;
+    private double rSquared = Double.NaN;
+
+    public void add(double velocity, double acceleration, double voltage) {
+        if (Math.abs(velocity) < MIN_VELOCITY) {
+            return;
+        }
+        x[0] = Math.signum(velocity);
+        x[1] = velocity;
+        x[2] = acceleration;
+        for (int r = 0; r < 3; r++) {
+            for (int c = 0; c < 3; c++) {
+                xtx[r][c] += x[r] * x[c];
+            }
+            xty[r] += x[r] * voltage;
+        }
+        ySum += voltage;
+        ySqSum += voltage * voltage;
+        count++;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return false if there isn't enough (or varied enough) data to fit
+     */
+    public boolean solve() {
+        if (count < 3) {
+            return false;
+        }
+
+        // Gaussian elimination with partial pivoting on a copy
+        double[][] a = new double[3][4];
+        for (int r = 0; r < 3; r++) {
+            System.arraycopy(xtx[r], 0, a[r], 0, 3);
+            a[r][3] = xty[r];
+        }
+        for (int col = 0; col < 3; col++) {
+            int pivot = col;
+            for (int r = col + 1; r < 3; r++) {
+                if (Math.abs(a[r][col]) > Math.abs(a[pivot][col])) {
+                    pivot = r;
+                }
+            }
+            if (Math.abs(a[pivot][col]) < 1e-12) {
+                return false;
+            }
+            double[] tmp = a[col];
+            a[col] = a[pivot];
+            a[pivot] = tmp;
+
+            for (int r = 0; r < 3; r++) {
+                if (r != col) {
+                    double factor = a[r][col] / a[col][col];
+                    for (int c = col; c < 4; c++) {
+                        a[r][c] -= factor * a[col][c];
+                    }
+                }
+            }
+        }
+        kS = a[0][3] / a[0][0];
+        kV = a[1][3] / a[1][1];
+        kA = a[2][3] / a[2][2];
+
+        // R^2 from the normal equations: SSE = y'y - 2b'X'y + b'X'Xb
+        double[] b = { kS, kV, kA };
+        double sse = ySqSum;
+        for (int r = 0; r < 3; r++) {
+            sse -= 2 * b[r] * xty[r];
+            for (int c = 0; c < 3; c++) {
+                sse += b[r] * xtx[r][c] * b[c];
+            }
+        }
+        double sst = ySqSum - ySum * ySum / count;
+        rSquared = sst > 0 ? 1.0 - sse / sst : Double.NaN;
+        return true;
+    }
+
+    public double getKs() {
+        return kS;
+    }
+
+    public double getKv() {
+        return kV;
+    }
+
+    public double getKa() {
+        return kA;
+    }
+
+    public double getRSquared() {
+        return rSquared;
+    }
+
+    public void reset() {
+        for (int r = 0; r < 3; r++) {
+            for (int c = 0; c < 3; c++) {
+                xtx[r][c] = 0;
+            }
+            xty[r] = 0;
+        }
+        ySum = 0;
+        ySqSum = 0;
+        count = 0;
+        kS = kV = kA = rSquared = Double.NaN;
+    }
+}
@@ -0,0 +1,26 @@
+package frc.robot.util;
+
+/**
+ * Runs input stages in order on the same array.
+ */
+public class InputPipeline implements InputStage {
+    private final InputStage[] stages;
+
+    public InputPipeline(InputStage... stages) {
+        this.stages = stages;
+    }
+
+    @Override
+    public void apply(double[] input, double dtSeconds) {
+        for (InputStage stage : stages) {
+            stage.apply(input, dtSeconds);
+        }
+    }
+
+    @Override
+    public void reset(double[] output) {
+        for (InputStage stage : stages) {
+            stage.reset(output);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package frc.robot.util;
+
+/**
+ * One step of driver input shaping. Works in place on a {x, y, omega}
+ * array so a pipeline of stages never allocates.
+ */
+public interface InputStage {
+    int X = 0;
+    int Y = 1;
+    int OMEGA = 2;
+
+    void apply(double[] input, double dtSeconds);
+
+    /**
+     * Tells a stateful stage its output is currently {@code output}, e.g.
+     * when a command takes over a robot that's already moving.
+     */
+    default void reset(double[] output) {}
+}
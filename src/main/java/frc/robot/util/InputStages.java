@@ -0,0 +1,220 @@
+package frc.robot.util;
+
+import java.util.function.DoubleSupplier;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * The input stages the drive uses. Translation is always shaped as a 2D
+ * vector, so the stick behaves the same in every direction.
+ */
+public final class InputStages {
+    private static final double GRAVITY = 9.81;
+
+    private InputStages() {}
+
+    /**
+     * Deadband on the length of the translation vector and on omega, with
+     * the rest of the range rescaled to start from zero. Translation is also
+     * clamped to length 1, since the stick corners go past it.
+     */
+    public static InputStage radialDeadband(double deadband) {
+        return (input, dt) -> {
+            double magnitude = Math.hypot(input[InputStage.X], input[InputStage.Y]);
+            double scaled = Math.min(rescale(magnitude, deadband), 1.0);
+            double ratio = magnitude > 0 ? scaled / magnitude : 0.0;
+            input[InputStage.X] *= ratio;
+            input[InputStage.Y] *= ratio;
+            input[InputStage.OMEGA] = Math.copySign(rescale(Math.abs(input[InputStage.OMEGA]), deadband), input[InputStage.OMEGA]);
+        };
+    }
+
+    private static double rescale(double magnitude, double deadband) {
+        return magnitude > deadband ? (magnitude - deadband) / (1.0 - deadband) : 0.0;
+    }
+
+    /**
+     * Maps the translation length and |omega| through a curve on [0, 1],
+     * keeping direction and sign.
+     */
+    public static InputStage responseCurve(DoubleUnaryOperator translation, DoubleUnaryOperator rotation) {
+        return (input, dt) -> {
+            double magnitude = Math.hypot(input[InputStage.X], input[InputStage.Y]);
+            if (magnitude > 0) {
+                double ratio = translation.applyAsDouble(magnitude) / magnitude;
+                input[InputStage.X] *= ratio;
+                input[InputStage.Y] *= ratio;
+            }
+            input[InputStage.OMEGA] = Math.copySign(rotation.applyAsDouble(Math.abs(input[InputStage.OMEGA])), input[InputStage.OMEGA]);
+        };
+    }
+
+    public static DoubleUnaryOperator power(double exponent) {
+        return value -> Math.pow(value, exponent);
+    }
+
+    /**
+     * Blend of linear and cubic, {@code weight} 0 is linear and 1 is cubic.
+     * Gentler than a square near zero without giving up the top end.
+     */
+    public static DoubleUnaryOperator cubicBlend(double weight) {
+        return value -> weight * value * value * value + (1.0 - weight) * value;
+    }
+
+    /**
+     * Stick units to meters and radians per second.
+     */
+    public static InputStage scale(double maxVelocity, double maxAngularVelocity) {
+        return (input, dt) -> {
+            input[InputStage.X] *= maxVelocity;
+            input[InputStage.Y] *= maxVelocity;
+            input[InputStage.OMEGA] *= maxAngularVelocity;
+        };
+    }
+
+    /**
+     * Limits the acceleration and jerk of the translation vector, and the
+     * angular acceleration of omega.
+     *
+     * Unlike one SlewRateLimiter per axis, the limit is on the length of
+     * the acceleration, so diagonals get the same limit as straight lines.
+     * Acceleration ramps down as the target gets close so the jerk limit
+     * doesn't cause overshoot. Optionally the limit also shrinks to what
+     * the robot can take without tipping in that direction.
+     */
+    public static class RateLimiter implements InputStage {
+        private final double maxAcceleration;
+        private final double maxJerk;
+        private final double maxAngularAcceleration;
+
+        private DoubleSupplier accelerationScale;
+        private double tipScale = 0;
+        private double halfWheelbase;
+        private double halfTrackwidth;
+        private DoubleSupplier headingRadians;
+
+        private double vx = 0;
+        private double vy = 0;
+        private double ax = 0;
+        private double ay = 0;
+        private double omega = 0;
+
+        /**
+         * @param maxJerk Double.POSITIVE_INFINITY for no jerk limit
+         */
+        public RateLimiter(double maxAcceleration, double maxJerk, double maxAngularAcceleration) {
+            this.maxAcceleration = maxAcceleration;
+            this.maxJerk = maxJerk;
+            this.maxAngularAcceleration = maxAngularAcceleration;
+        }
+
+        /**
+         * Also limits acceleration to what won't tip the robot over its
+         * wheels: g * (distance to the wheel edge that way) / CoG height,
+         * times {@code safetyFactor}.
+         *
+         * @param headingRadians robot heading, to turn field-relative
+         *     acceleration robot-relative. Null if the input is already
+         *     robot-relative.
+         */
+        public RateLimiter withTipLimit(double cogHeightMeters, double wheelbaseMeters, double trackwidthMeters,
+                                        double safetyFactor, DoubleSupplier headingRadians) {
+            tipScale = GRAVITY / cogHeightMeters * safetyFactor;
+            halfWheelbase = wheelbaseMeters / 2.0;
+            halfTrackwidth = trackwidthMeters / 2.0;
+            this.headingRadians = headingRadians;
+            return this;
+        }
+
+        /**
+         * Scales maxAcceleration by whatever {@code scale} returns each
+         * update, e.g. down while the battery sags. The tip limit stays as
+         * it is.
+         */
+        public RateLimiter withAccelerationScale(DoubleSupplier scale) {
+            accelerationScale = scale;
+            return this;
+        }
+
+        // Max acceleration along the unit vector (ux, uy)
+        private double accelerationLimit(double ux, double uy) {
+            double limit = accelerationScale != null ? maxAcceleration * accelerationScale.getAsDouble() : maxAcceleration;
+            if (tipScale <= 0) {
+                return limit;
+            }
+            if (headingRadians != null) {
+                double heading = headingRadians.getAsDouble();
+                double cos = Math.cos(heading);
+                double sin = Math.sin(heading);
+                double rx = ux * cos + uy * sin;
+                double ry = -ux * sin + uy * cos;
+                ux = rx;
+                uy = ry;
+            }
+            // Distance from the center to the edge of the wheel rectangle in this direction
+            double support = Math.min(
+                Math.abs(ux) > 1e-9 ? halfWheelbase / Math.abs(ux) : Double.POSITIVE_INFINITY,
+                Math.abs(uy) > 1e-9 ? halfTrackwidth / Math.abs(uy) : Double.POSITIVE_INFINITY);
+            return Math.min(limit, tipScale * support);
+        }
+
+        @Override
+        public void apply(double[] input, double dtSeconds) {
+            double ex = input[X] - vx;
+            double ey = input[Y] - vy;
+            double error = Math.hypot(ex, ey);
+
+            double desiredX = 0;
+            double desiredY = 0;
+            if (error > 1e-9) {
+                double ux = ex / error;
+                double uy = ey / error;
+                double desired = Math.min(accelerationLimit(ux, uy), error / dtSeconds);
+                // Leave room to ramp the acceleration back down before we get there,
+                // a^2 / 2j + a * dt / 2 <= error, the dt term for stepping in whole loops
+                if (Double.isFinite(maxJerk)) {
+                    double lag = maxJerk * dtSeconds / 2.0;
+                    desired = Math.min(desired, Math.sqrt(lag * lag + 2.0 * maxJerk * error) - lag);
+                }
+                desiredX = ux * desired;
+                desiredY = uy * desired;
+            }
+
+            double jx = desiredX - ax;
+            double jy = desiredY - ay;
+            double jerk = Math.hypot(jx, jy);
+            double maxStep = maxJerk * dtSeconds;
+            if (jerk > maxStep) {
+                jx *= maxStep / jerk;
+                jy *= maxStep / jerk;
+            }
+            ax += jx;
+            ay += jy;
+            vx += ax * dtSeconds;
+            vy += ay * dtSeconds;
+
+            // Went past the target, settle on it
+            if ((input[X] - vx) * ex + (input[Y] - vy) * ey < 0) {
+                vx = input[X];
+                vy = input[Y];
+                ax = 0;
+                ay = 0;
+            }
+
+            double maxDelta = maxAngularAcceleration * dtSeconds;
+            omega += Math.max(-maxDelta, Math.min(maxDelta, input[OMEGA] - omega));
+
+            input[X] = vx;
+            input[Y] = vy;
+            input[OMEGA] = omega;
+        }
+
+        @Override
+        public void reset(double[] output) {
+            vx = output[X];
+            vy = output[Y];
+            omega = output[OMEGA];
+            ax = 0;
+            ay = 0;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringPublisher;
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
+import edu.wpi.first.util.datalog.StringLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+
+/**
+ * Times named sections of the robot loop into {@link TimingHistogram}s.
+ *
+ * Register a section once, then wrap the code with
+ * {@code long t = System.nanoTime(); ...; profiler.record(id, t);}.
+ * Recording doesn't allocate. Once per {@link #publish()} the p50/p99/max of
+ * every section goes to NetworkTables and the DataLog as
+ * [p50 ms, p99 ms, max ms, samples], the histograms reset, and the
+ * breakdown of the slowest loop in that window is published.
+ */
+public class LoopProfiler {
+    private static LoopProfiler instance;
+
+    public static synchronized LoopProfiler getInstance() {
+        if (instance == null) {
+            instance = new LoopProfiler();
+        }
+        return instance;
+    }
+
+    private final NetworkTable table = NetworkTableInstance.getDefault().getTable("LoopProfiler");
+    private final DataLog log = DataLogManager.getLog();
+
+    private final ArrayList<String> names = new ArrayList<>();
+    private final ArrayList<TimingHistogram> histograms = new ArrayList<>();
+    private final ArrayList<DoubleArrayPublisher> publishers = new ArrayList<>();
+    private final ArrayList<DoubleArrayLogEntry> logEntries = new ArrayList<>();
+    private final double[] stats = new double[4];
+
+    // Per-section time spent in the current loop, and in the worst loop this window
+    private long[] currentLoop = new long[16];
+    private long[] worstLoop = new long[16];
+    private long loopStart = 0;
+    private long worstLoopNanos = 0;
+
+    private final int loopSection;
+    private final StringPublisher worstPublisher;
+    private final StringLogEntry worstLogEntry;
+    private final StringBuilder worstText = new StringBuilder();
+
+    private final IdentityHashMap<Command, Integer> commandSections = new IdentityHashMap<>();
+    private long commandMark = 0;
+
+    private LoopProfiler() {
+        loopSection = register("robotPeriodic");
+        worstPublisher = table.getStringTopic("Worst loop").publish();
+        worstLogEntry = new StringLogEntry(log, "/LoopProfiler/Worst loop");
+    }
+
+    public int register(String name) {
+        int id = names.size();
+        names.add(name);
+        histograms.add(new TimingHistogram());
+        publishers.add(table.getDoubleArrayTopic(name).publish());
+        logEntries.add(new DoubleArrayLogEntry(log, "/LoopProfiler/" + name));
+
+        if (id >= currentLoop.length) {
+            long[] grown = new long[currentLoop.length * 2];
+            System.arraycopy(currentLoop, 0, grown, 0, currentLoop.length);
+            currentLoop = grown;
+            long[] grownWorst = new long[grown.length];
+            System.arraycopy(worstLoop, 0, grownWorst, 0, worstLoop.length);
+            worstLoop = grownWorst;
+        }
+        return id;
+    }
+
+    public void record(int id, long startNanos) {
+        recordNanos(id, System.nanoTime() - startNanos);
+    }
+
+    public void recordNanos(int id, long nanos) {
+        histograms.get(id).record(nanos);
+        currentLoop[id] += nanos;
+    }
+
+    /**
+     * Times every call of {@code runnable} as its own section.
+     */
+    public Runnable wrap(String name, Runnable runnable) {
+        int id = register(name);
+        return () -> {
+            long start = System.nanoTime();
+            runnable.run();
+            record(id, start);
+        };
+    }
+
+    /**
+     * Times each scheduled command's execute().
+     *
+     * The scheduler has no hook before execute(), so this marks the end of
+     * button polling (our binding is added last) and then measures from one
+     * onCommandExecute callback to the next. Each command's time therefore
+     * also includes the previous command's isFinished()/end(), which is
+     * normally tiny.
+     */
+    public void instrumentScheduler(CommandScheduler scheduler) {
+        scheduler.getDefaultButtonLoop().bind(() -> commandMark = System.nanoTime());
+        scheduler.onCommandExecute(command -> {
+            long now = System.nanoTime();
+            recordNanos(commandSection(command), now - commandMark);
+            commandMark = now;
+        });
+    }
+
+    private int commandSection(Command command) {
+        Integer id = commandSections.get(command);
+        if (id == null) {
+            id = register(command.getName() + ".execute");
+            commandSections.put(command, id);
+        }
+        return id;
+    }
+
+    public void beginLoop() {
+        loopStart = System.nanoTime();
+    }
+
+    public void endLoop() {
+        long total = System.nanoTime() - loopStart;
+        recordNanos(loopSection, total);
+
+        int n = names.size();
+        if (total > worstLoopNanos) {
+            worstLoopNanos = total;
+            System.arraycopy(currentLoop, 0, worstLoop, 0, n);
+        }
+        for (int i = 0; i < n; i++) {
+            currentLoop[i] = 0;
+        }
+    }
+
+    /**
+     * Publishes and resets every histogram. Meant to run about once a second.
+     */
+    public void publish() {
+        int n = names.size();
+        for (int i = 0; i < n; i++) {
+            TimingHistogram histogram = histograms.get(i);
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            stats[0] = histogram.getPercentileNanos(0.5) / 1e6;
+            stats[1] = histogram.getPercentileNanos(0.99) / 1e6;
+            stats[2] = histogram.getMaxNanos() / 1e6;
+            stats[3] = histogram.getCount();
+            publishers.get(i).set(stats);
+            logEntries.get(i).append(stats);
+            histogram.reset();
+        }
+
+        if (worstLoopNanos > 0) {
+            worstText.setLength(0);
+            worstText.append(String.format("%.2f ms:", worstLoopNanos / 1e6));
+            for (int i = 0; i < n; i++) {
+                if (i != loopSection && worstLoop[i] > 0) {
+                    worstText.append(' ').append(names.get(i))
+                        .append('=').append(String.format("%.2f", worstLoop[i] / 1e6));
+                }
+            }
+            String text = worstText.toString();
+            worstPublisher.set(text);
+            worstLogEntry.append(text);
+        }
+        worstLoopNanos = 0;
+    }
+}
@@ -0,0 +1,282 @@
+package frc.robot.util;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+import frc.robot.subsystems.Drivebase;
+import frc.robot.subsystems.DrivebaseLog;
+
+/**
+ * Desktop tool that replays the logged module samples of a .wpilog through
+ * plain wheel odometry twice: once on the raw encoders, like the estimator
+ * used to get them, and once through {@link OdometryFrontEnd}. Both are
+ * compared against every vision pose the estimator accepted (VisionPose),
+ * at the time it was captured, and the drift of each is printed.
+ *
+ * The logged EstimatedPose only sets where the replay starts and restarts.
+ * It's built from the front end's own output, so without vision it would
+ * match the front end run by construction and can't score it. Scoring
+ * only happens where vision saw tags, and logs without VisionPose aren't
+ * scored at all. Logs with collisions and good tag coverage tell the most.
+ * Older logs without OdometryYaw fall back to the 50 Hz GyroYaw, and ones
+ * without Acceleration just skip the accelerometer checks.
+ *
+ * ./gradlew evaluateOdometry -Plog=FRC_2023xxxx.wpilog [-Pout=odometry.csv]
+ */
+public final class OdometryEvaluation {
+    // A step this big in the logged estimate is a resetOdometry, not driving
+    private static final double RESET_JUMP_METERS = 1.0;
+    // Replayed poses kept to line up with vision captures, well past camera latency
+    private static final long HISTORY_MICROS = 2000000;
+
+    private OdometryEvaluation() {}
+
+    /**
+     * One odometry being scored against the reference.
+     */
+    private static class Run {
+        final SwerveModulePosition[] positions = new SwerveModulePosition[] {
+            new SwerveModulePosition(), new SwerveModulePosition(), new SwerveModulePosition(), new SwerveModulePosition()
+        };
+        SwerveDriveOdometry odometry;
+        double sumSq = 0;
+        double max = 0;
+        double last = 0;
+        int count = 0;
+
+        void set(double[] distances, double[] angles) {
+            for (int i = 0; i < positions.length; i++) {
+                positions[i].distanceMeters = distances[i];
+                positions[i].angle = new Rotation2d(angles[i]);
+            }
+        }
+
+        void reset(SwerveDriveKinematics kinematics, Rotation2d yaw, Pose2d pose) {
+            if (odometry == null) {
+                odometry = new SwerveDriveOdometry(kinematics, yaw, positions, pose);
+            } else {
+                odometry.resetPosition(yaw, positions, pose);
+            }
+        }
+
+        double score(Pose2d estimate, Pose2d reference) {
+            last = estimate.getTranslation().getDistance(reference.getTranslation());
+            sumSq += last * last;
+            max = Math.max(max, last);
+            count++;
+            return last;
+        }
+
+        double rms() {
+            return count > 0 ? Math.sqrt(sumSq / count) : 0.0;
+        }
+    }
+
+    public static void main(String... args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: OdometryEvaluation <log.wpilog> [out.csv]");
+            System.exit(1);
+        }
+
+        DataLogReader reader = new DataLogReader(args[0]);
+        if (!reader.isValid()) {
+            System.err.println(args[0] + " is not a valid DataLog file");
+            System.exit(1);
+        }
+        PrintStream out = args.length > 1 ? new PrintStream(args[1]) : null;
+        if (out != null) {
+            out.println("capture time,raw error,front end error,std-dev scale");
+        }
+
+        SwerveDriveKinematics kinematics = new SwerveDriveKinematics(Drivebase.MODULE_LOCATIONS);
+        OdometryFrontEnd frontEnd = new OdometryFrontEnd(Drivebase.MODULE_LOCATIONS);
+        Run raw = new Run();
+        Run filtered = new Run();
+        // Sample time to [raw, front end] poses
+        TreeMap<Long, Pose2d[]> history = new TreeMap<>();
+
+        Map<Integer, String> names = new HashMap<>();
+        double[] distances = new double[4];
+        double[] angles = new double[4];
+        boolean haveSample = false;
+        boolean started = false;
+        Pose2d lastReference = null;
+
+        long odometryYawTime = -1;
+        double odometryYaw = Double.NaN;
+        double gyroYaw = Double.NaN;
+        double gyroPitch = 0;
+        // Older logs don't have it, those only gate on pitch
+        double gyroRoll = 0;
+        double lastYaw = Double.NaN;
+        long lastAccelerationTime = -1;
+
+        int samples = 0;
+        int resets = 0;
+        int visionPoses = 0;
+        double collidingSeconds = 0;
+        long first = -1;
+        long last = -1;
+        long lastReferenceTime = -1;
+
+        for (DataLogRecord record : reader) {
+            if (record.isStart()) {
+                DataLogRecord.StartRecordData start = record.getStartData();
+                if (start.name.startsWith(DrivebaseLog.PREFIX)) {
+                    names.put(start.entry, start.name.substring(DrivebaseLog.PREFIX.length()));
+                }
+                continue;
+            }
+            if (record.isControl()) {
+                continue;
+            }
+            String name = names.get(record.getEntry());
+            if (name == null) {
+                continue;
+            }
+            long timestamp = record.getTimestamp();
+            double seconds = timestamp / 1e6;
+
+            switch (name) {
+                case "OdometryYaw":
+                    odometryYawTime = timestamp;
+                    odometryYaw = record.getDouble();
+                    break;
+                case "GyroYaw":
+                    gyroYaw = record.getDouble();
+                    break;
+                case "GyroPitch":
+                    gyroPitch = record.getDouble();
+                    break;
+                case "GyroRoll":
+                    gyroRoll = record.getDouble();
+                    break;
+                case "Acceleration": {
+                    double[] values = record.getDoubleArray();
+                    double dt = lastAccelerationTime < 0 ? 0.02 : (timestamp - lastAccelerationTime) / 1e6;
+                    lastAccelerationTime = timestamp;
+                    boolean level = OdometryFrontEnd.isLevel(gyroPitch, gyroRoll);
+                    if (started) {
+                        frontEnd.updateAcceleration(seconds,
+                            level ? values[0] : Double.NaN,
+                            level ? values[1] : Double.NaN,
+                            dt);
+                    }
+                    break;
+                }
+                case "ModulePositions": {
+                    double[] values = record.getDoubleArray();
+                    for (int i = 0; i < 4; i++) {
+                        distances[i] = values[i * 2];
+                        angles[i] = values[i * 2 + 1];
+                    }
+                    lastYaw = odometryYawTime == timestamp ? odometryYaw : gyroYaw;
+                    if (Double.isNaN(lastYaw)) {
+                        break;
+                    }
+                    haveSample = true;
+                    if (!started) {
+                        break;
+                    }
+
+                    Rotation2d yaw = Rotation2d.fromDegrees(lastYaw);
+                    raw.set(distances, angles);
+                    raw.odometry.update(yaw, raw.positions);
+                    frontEnd.update(seconds, distances, angles, lastYaw);
+                    filtered.set(frontEnd.getDistances(), angles);
+                    filtered.odometry.update(yaw, filtered.positions);
+                    history.put(timestamp, new Pose2d[] { raw.odometry.getPoseMeters(), filtered.odometry.getPoseMeters() });
+                    while (history.firstKey() < timestamp - HISTORY_MICROS) {
+                        history.pollFirstEntry();
+                    }
+                    samples++;
+                    if (first < 0) {
+                        first = timestamp;
+                    }
+                    last = timestamp;
+                    break;
+                }
+                case "EstimatedPose": {
+                    double[] values = record.getDoubleArray();
+                    Pose2d reference = new Pose2d(values[0], values[1], new Rotation2d(values[2]));
+                    if (!haveSample) {
+                        break;
+                    }
+                    boolean reset = lastReference != null
+                        && reference.getTranslation().getDistance(lastReference.getTranslation()) > RESET_JUMP_METERS;
+                    if (!started || reset) {
+                        // Start both over from the logged estimate
+                        Rotation2d yaw = Rotation2d.fromDegrees(lastYaw);
+                        raw.set(distances, angles);
+                        raw.reset(kinematics, yaw, reference);
+                        frontEnd.reset(distances);
+                        filtered.set(distances, angles);
+                        filtered.reset(kinematics, yaw, reference);
+                        history.clear();
+                        if (started) {
+                            resets++;
+                        }
+                        started = true;
+                    } else if (frontEnd.getStdDevScale(seconds) > 1.0 && lastReferenceTime >= 0) {
+                        collidingSeconds += (timestamp - lastReferenceTime) / 1e6;
+                    }
+                    lastReference = reference;
+                    lastReferenceTime = timestamp;
+                    break;
+                }
+                case "VisionPose": {
+                    // Stamped with the capture time, which is before the samples already replayed
+                    Map.Entry<Long, Pose2d[]> replayed = history.floorEntry(timestamp);
+                    if (replayed == null) {
+                        break;
+                    }
+                    double[] values = record.getDoubleArray();
+                    Pose2d measured = new Pose2d(values[0], values[1], new Rotation2d(values[2]));
+                    double rawError = raw.score(replayed.getValue()[0], measured);
+                    double filteredError = filtered.score(replayed.getValue()[1], measured);
+                    visionPoses++;
+                    if (out != null) {
+                        out.println(seconds + "," + rawError + "," + filteredError + "," + frontEnd.getStdDevScale(seconds));
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+
+        if (out != null) {
+            out.close();
+        }
+
+        System.out.printf("%.1f s, %d module samples, %d odometry resets%n",
+            first < 0 ? 0.0 : (last - first) / 1e6, samples, resets);
+        if (raw.count == 0) {
+            System.out.println("Nothing to compare, need ModulePositions, EstimatedPose and VisionPose."
+                + " EstimatedPose alone comes from the front end itself, so it can't score it");
+            return;
+        }
+        System.out.printf("Scored only against %d accepted vision poses, not EstimatedPose%n", visionPoses);
+        System.out.printf("%-10s %9s %9s %9s%n", "", "RMS (m)", "max (m)", "final (m)");
+        System.out.printf("%-10s %9.3f %9.3f %9.3f%n", "raw", raw.rms(), raw.max, raw.last);
+        System.out.printf("%-10s %9.3f %9.3f %9.3f%n", "front end", filtered.rms(), filtered.max, filtered.last);
+        System.out.printf("Drift reduction: %.0f%% RMS, %.0f%% max%n",
+            reduction(raw.rms(), filtered.rms()), reduction(raw.max, filtered.max));
+        System.out.printf("%d collisions, %.1f s with odometry distrusted, %d module samples replaced%n",
+            frontEnd.getCollisionDetector().getHitCount(), collidingSeconds, frontEnd.getReplacedCount());
+    }
+
+    private static double reduction(double before, double after) {
+        return before > 0 ? (1.0 - after / before) * 100.0 : 0.0;
+    }
+}
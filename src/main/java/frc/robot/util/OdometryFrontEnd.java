@@ -0,0 +1,164 @@
+package frc.robot.util;
+
+import static frc.robot.Constants.*;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Sits between the raw module samples and the pose estimator.
+ *
+ * Each sample goes through the {@link SlipEstimator}, and any module it
+ * calls slipping has its encoder travel swapped for what it would have
+ * rolled on the ground, so the estimator never sees it. The
+ * {@link CollisionDetector} watches the same samples plus the
+ * accelerometer, and says how much less the odometry should be trusted
+ * against vision for a while after a hit.
+ *
+ * A yaw step faster than ODOMETRY_MAX_YAW_RATE is taken as the gyro being
+ * reset (zeroGyroscope, setYaw), so that sample skips both of them and
+ * keeps its raw encoder travel.
+ *
+ * Used by Drivebase on the robot and by {@link OdometryEvaluation} on logs,
+ * so both run exactly the same code.
+ */
+public class OdometryFrontEnd {
+    private final int n;
+    private final SlipEstimator slip;
+    private final CollisionDetector collision;
+
+    // Handed to the estimator: raw travel, except while slipping
+    private final double[] distances;
+    private final double[] lastRawDistances;
+    // Per-module speed over the last sample, with slipping modules replaced
+    private final double[] speeds;
+    private double lastTimestamp = Double.NaN;
+    private double lastYawDegrees = Double.NaN;
+    private long replaced = 0;
+    private long yawResets = 0;
+
+    public OdometryFrontEnd(Translation2d... moduleLocations) {
+        n = moduleLocations.length;
+        slip = new SlipEstimator(TRACTION_SLIP_SPEED, TRACTION_SLIP_RATIO, TRACTION_SPIN_SPEED, moduleLocations);
+        collision = new CollisionDetector(COLLISION_RESIDUAL, COLLISION_ACCELERATION,
+            COLLISION_HOLD_SECONDS, COLLISION_STD_DEV_SCALE, moduleLocations);
+        distances = new double[n];
+        lastRawDistances = new double[n];
+        speeds = new double[n];
+    }
+
+    /**
+     * Starts over from the given encoder distances, e.g. when the pose
+     * estimator is reset.
+     */
+    public void reset(double[] rawDistances) {
+        System.arraycopy(rawDistances, 0, distances, 0, n);
+        System.arraycopy(rawDistances, 0, lastRawDistances, 0, n);
+        for (int i = 0; i < n; i++) {
+            speeds[i] = 0;
+        }
+        lastTimestamp = Double.NaN;
+        lastYawDegrees = Double.NaN;
+        slip.reset();
+        collision.reset();
+    }
+
+    /**
+     * Takes one raw odometry sample and advances {@link #getDistances()}.
+     *
+     * @return false if there was no previous sample to get speeds from,
+     *     in which case {@link #getSpeeds()} is all zero
+     */
+    public boolean update(double timestampSeconds, double[] rawDistances, double[] angles, double yawDegrees) {
+        double dt = timestampSeconds - lastTimestamp;
+        boolean hasSpeeds = dt > 0;
+        boolean checked = false;
+        if (hasSpeeds) {
+            for (int i = 0; i < n; i++) {
+                speeds[i] = (rawDistances[i] - lastRawDistances[i]) / dt;
+            }
+            double omega = Math.toRadians(yawDegrees - lastYawDegrees) / dt;
+            if (Math.abs(omega) <= ODOMETRY_MAX_YAW_RATE) {
+                slip.update(speeds, angles, omega);
+                collision.update(timestampSeconds, speeds, angles, omega);
+                checked = true;
+            } else {
+                // The gyro was reset, there's no rotation to check the wheels against
+                yawResets++;
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            double delta = rawDistances[i] - lastRawDistances[i];
+            if (checked && slip.isSlipping(i)) {
+                speeds[i] = slip.getGroundSpeed(i, angles[i]);
+                delta = speeds[i] * dt;
+                replaced++;
+            } else if (!hasSpeeds) {
+                speeds[i] = 0;
+            }
+            distances[i] += delta;
+        }
+        System.arraycopy(rawDistances, 0, lastRawDistances, 0, n);
+        lastTimestamp = timestampSeconds;
+        lastYawDegrees = yawDegrees;
+        return hasSpeeds;
+    }
+
+    /**
+     * Whether the robot sits flat enough for its accelerometer to read
+     * driving rather than gravity. Pitch and roll are combined into the
+     * total tilt, so a robot rolled sideways counts as much as one pitched.
+     */
+    public static boolean isLevel(double pitchDegrees, double rollDegrees) {
+        double cosTilt = Math.cos(Math.toRadians(pitchDegrees)) * Math.cos(Math.toRadians(rollDegrees));
+        return cosTilt > Math.cos(Math.toRadians(TRACTION_MAX_TILT_DEGREES));
+    }
+
+    /**
+     * Pass NaN when there's no accelerometer or it can't be trusted, see
+     * {@link #isLevel(double, double)}.
+     *
+     * @param ax robot-relative acceleration, m/s^2
+     * @param ay robot-relative acceleration, m/s^2
+     */
+    public void updateAcceleration(double timestampSeconds, double ax, double ay, double dtSeconds) {
+        slip.updateAcceleration(ax, ay, dtSeconds);
+        collision.updateAcceleration(timestampSeconds, ax, ay);
+    }
+
+    /** Module distances for the pose estimator, meters */
+    public double[] getDistances() {
+        return distances;
+    }
+
+    /** Module speeds over the last sample for the pose history, m/s */
+    public double[] getSpeeds() {
+        return speeds;
+    }
+
+    /**
+     * How much to grow the odometry std-devs at a timestamp, see
+     * {@link CollisionDetector#getStdDevScale(double)}.
+     */
+    public double getStdDevScale(double timestampSeconds) {
+        return collision.getStdDevScale(timestampSeconds);
+    }
+
+    public SlipEstimator getSlipEstimator() {
+        return slip;
+    }
+
+    public CollisionDetector getCollisionDetector() {
+        return collision;
+    }
+
+    /** Module samples whose encoder travel was thrown out */
+    public long getReplacedCount() {
+        return replaced;
+    }
+
+    /** Samples skipped by slip and collision checks because the yaw jumped */
+    public long getYawResetCount() {
+        return yawResets;
+    }
+}
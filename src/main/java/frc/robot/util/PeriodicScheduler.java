@@ -0,0 +1,222 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Runs periodic tasks at their own rates off one fast base tick.
+ *
+ * Tasks can be added at any time. Each one gets a phase offset that puts it
+ * on the least busy ticks, so a 10ms and a 20ms task don't land on the same
+ * tick. Each task has a time budget and an {@link OverrunPolicy} for when the
+ * scheduler falls behind. Run times go to the {@link LoopProfiler}.
+ *
+ * {@link #run()} has to be called every {@link #BASE_PERIOD_SECONDS}, see
+ * Robot.robotInit().
+ */
+public class PeriodicScheduler {
+    public static final double BASE_PERIOD_SECONDS = 0.005;
+    // One second of ticks, used to balance phases
+    private static final int HYPERPERIOD_TICKS = 200;
+    private static final int MAX_CATCH_UP_RUNS = 4;
+    private static final int OVERRUN_WARNING_INTERVAL = 50;
+
+    public enum OverrunPolicy {
+        // Run once and move on to the next period that hasn't started yet
+        SKIP,
+        // Run the missed periods back to back, up to a small limit
+        CATCH_UP
+    }
+
+    public static class Task {
+        private final String name;
+        private final Runnable runnable;
+        private final int periodTicks;
+        private final long budgetNanos;
+        private final OverrunPolicy policy;
+        private final int section;
+
+        private int phaseTicks;
+        private long nextTick;
+
+        private long runs = 0;
+        private long overruns = 0;
+        private long skippedPeriods = 0;
+        private long maxNanos = 0;
+
+        private Task(String name, Runnable runnable, int periodTicks, long budgetNanos, OverrunPolicy policy, int section) {
+            this.name = name;
+            this.runnable = runnable;
+            this.periodTicks = periodTicks;
+            this.budgetNanos = budgetNanos;
+            this.policy = policy;
+            this.section = section;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getPeriodSeconds() {
+            return periodTicks * BASE_PERIOD_SECONDS;
+        }
+
+        public double getPhaseSeconds() {
+            return phaseTicks * BASE_PERIOD_SECONDS;
+        }
+
+        public long getRuns() {
+            return runs;
+        }
+
+        /** Runs that went over the task's budget. */
+        public long getOverruns() {
+            return overruns;
+        }
+
+        /** Periods dropped because the scheduler was late. */
+        public long getSkippedPeriods() {
+            return skippedPeriods;
+        }
+
+        public double getMaxSeconds() {
+            return maxNanos / 1e9;
+        }
+    }
+
+    private final ArrayList<Task> tasks = new ArrayList<>();
+    private final ArrayList<Task> pending = new ArrayList<>();
+    // Set under the pending lock, so run() can check it without taking the lock every tick
+    private volatile boolean hasPending = false;
+    private final int[] tickLoad = new int[HYPERPERIOD_TICKS];
+    private final LoopProfiler profiler = LoopProfiler.getInstance();
+
+    private double startTime = Double.NaN;
+    private long tick = -1;
+
+    public Task add(String name, Runnable runnable, double periodSeconds) {
+        return add(name, runnable, periodSeconds, periodSeconds, OverrunPolicy.SKIP);
+    }
+
+    /**
+     * @param budgetSeconds how long one run is allowed to take before it counts as an overrun
+     */
+    public Task add(String name, Runnable runnable, double periodSeconds, double budgetSeconds, OverrunPolicy policy) {
+        int periodTicks = Math.max(1, (int) Math.round(periodSeconds / BASE_PERIOD_SECONDS));
+        Task task = new Task(name, runnable, periodTicks, (long) (budgetSeconds * 1e9), policy,
+            profiler.register("periodic " + name));
+        synchronized (pending) {
+            pending.add(task);
+            hasPending = true;
+        }
+        return task;
+    }
+
+    public ArrayList<Task> getTasks() {
+        return tasks;
+    }
+
+    /**
+     * Counts one tick per call, so a call that comes a little late or early
+     * doesn't look like a skipped tick. Only when the clock is a whole tick
+     * past the count were calls really missed, and then it jumps ahead.
+     */
+    private long nextTick() {
+        double now = Timer.getFPGATimestamp();
+        if (Double.isNaN(startTime)) {
+            startTime = now;
+        }
+        long clockTick = (long) ((now - startTime) / BASE_PERIOD_SECONDS);
+        tick = clockTick > tick + 1 ? clockTick : tick + 1;
+        return tick;
+    }
+
+    // Picks the phase whose busiest tick has the fewest other tasks on it
+    private int choosePhase(int periodTicks) {
+        int bestPhase = 0;
+        int bestLoad = Integer.MAX_VALUE;
+        for (int phase = 0; phase < periodTicks; phase++) {
+            int load = 0;
+            for (int tick = phase; tick < HYPERPERIOD_TICKS; tick += periodTicks) {
+                load = Math.max(load, tickLoad[tick]);
+            }
+            if (load < bestLoad) {
+                bestLoad = load;
+                bestPhase = phase;
+            }
+        }
+        for (int tick = bestPhase; tick < HYPERPERIOD_TICKS; tick += periodTicks) {
+            tickLoad[tick]++;
+        }
+        return bestPhase;
+    }
+
+    private void addPending(long nowTick) {
+        synchronized (pending) {
+            for (Task task : pending) {
+                task.phaseTicks = choosePhase(task.periodTicks);
+                // First run at the next tick that lines up with the phase
+                long periodStart = nowTick - Math.floorMod(nowTick, (long) task.periodTicks);
+                task.nextTick = periodStart + task.phaseTicks;
+                if (task.nextTick < nowTick) {
+                    task.nextTick += task.periodTicks;
+                }
+                tasks.add(task);
+            }
+            pending.clear();
+            hasPending = false;
+        }
+    }
+
+    public void run() {
+        long nowTick = nextTick();
+        if (hasPending) {
+            addPending(nowTick);
+        }
+
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+            if (nowTick < task.nextTick) {
+                continue;
+            }
+
+            long behind = (nowTick - task.nextTick) / task.periodTicks;
+            int runs = 1;
+            if (task.policy == OverrunPolicy.CATCH_UP) {
+                runs = (int) Math.min(behind + 1, MAX_CATCH_UP_RUNS);
+            }
+
+            for (int r = 0; r < runs; r++) {
+                runTask(task);
+                task.nextTick += task.periodTicks;
+            }
+
+            if (task.nextTick <= nowTick) {
+                // Calls were missed and it's still behind (SKIP, or too far behind to catch up),
+                // drop to the next period
+                long missed = (nowTick - task.nextTick) / task.periodTicks + 1;
+                task.skippedPeriods += missed;
+                task.nextTick += missed * task.periodTicks;
+            }
+        }
+    }
+
+    private void runTask(Task task) {
+        long start = System.nanoTime();
+        task.runnable.run();
+        long elapsed = System.nanoTime() - start;
+        profiler.recordNanos(task.section, elapsed);
+
+        task.runs++;
+        task.maxNanos = Math.max(task.maxNanos, elapsed);
+        if (elapsed > task.budgetNanos) {
+            if (task.overruns % OVERRUN_WARNING_INTERVAL == 0) {
+                DriverStation.reportWarning("Periodic " + task.name + " took "
+                    + (elapsed / 1e6) + "ms, budget " + (task.budgetNanos / 1e6) + "ms", false);
+            }
+            task.overruns++;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.MathUtil;
+
+/**
+ * Fixed-capacity history of timestamped poses and field-relative velocities,
+ * stored as primitive arrays in a ring. Recording never allocates, and
+ * lookups binary search the timestamps and interpolate between the two
+ * nearest entries.
+ *
+ * Not thread safe. The drivebase records from the main loop, so query it
+ * from the main loop too.
+ */
+public class PoseHistory {
+    // Layout of the array filled by sample()
+    public static final int X = 0;
+    public static final int Y = 1;
+    public static final int THETA = 2;
+    public static final int VX = 3;
+    public static final int VY = 4;
+    public static final int OMEGA = 5;
+    public static final int WIDTH = 6;
+
+    private final int capacity;
+    private final double[] timestamps;
+    private final double[] data;
+
+    // Next slot to write, and how many slots hold valid entries
+    private int head = 0;
+    private int size = 0;
+
+    public PoseHistory(int capacity) {
+        this.capacity = capacity;
+        timestamps = new double[capacity];
+        data = new double[capacity * WIDTH];
+    }
+
+    /**
+     * Adds an entry, overwriting the oldest once full. Entries that aren't
+     * newer than the last one are ignored.
+     */
+    public void record(double timestamp, double x, double y, double theta, double vx, double vy, double omega) {
+        if (size > 0 && timestamp <= getNewestTimestamp()) {
+            return;
+        }
+        timestamps[head] = timestamp;
+        int base = head * WIDTH;
+        data[base + X] = x;
+        data[base + Y] = y;
+        data[base + THETA] = theta;
+        data[base + VX] = vx;
+        data[base + VY] = vy;
+        data[base + OMEGA] = omega;
+
+        head = (head + 1) % capacity;
+        if (size < capacity) {
+            size++;
+        }
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public double getOldestTimestamp() {
+        return size > 0 ? timestamps[slot(0)] : Double.NaN;
+    }
+
+    public double getNewestTimestamp() {
+        return size > 0 ? timestamps[slot(size - 1)] : Double.NaN;
+    }
+
+    // Physical slot of the i-th oldest entry
+    private int slot(int i) {
+        return (head - size + i + capacity) % capacity;
+    }
+
+    /**
+     * Fills {@code out} (at least {@link #WIDTH} long, indexed by the
+     * constants above) with the state at {@code timestamp}, interpolated
+     * between the entries on either side. Times newer than the newest entry
+     * get the newest entry.
+     *
+     * @return false if the history is empty or {@code timestamp} is older
+     *     than anything kept, in which case {@code out} is untouched
+     */
+    public boolean sample(double timestamp, double[] out) {
+        if (size == 0 || timestamp < getOldestTimestamp()) {
+            return false;
+        }
+        if (timestamp >= getNewestTimestamp()) {
+            System.arraycopy(data, slot(size - 1) * WIDTH, out, 0, WIDTH);
+            return true;
+        }
+
+        // Last entry at or before timestamp. Oldest <= timestamp < newest, so hi stays in range.
+        int lo = 0;
+        int hi = size - 1;
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (timestamps[slot(mid)] <= timestamp) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+
+        int a = slot(lo);
+        int b = slot(hi);
+        double t = (timestamp - timestamps[a]) / (timestamps[b] - timestamps[a]);
+        int baseA = a * WIDTH;
+        int baseB = b * WIDTH;
+        for (int i = 0; i < WIDTH; i++) {
+            out[i] = data[baseA + i] + (data[baseB + i] - data[baseA + i]) * t;
+        }
+        // Heading takes the short way around
+        out[THETA] = MathUtil.angleModulus(
+            data[baseA + THETA] + MathUtil.angleModulus(data[baseB + THETA] - data[baseA + THETA]) * t);
+        return true;
+    }
+}
@@ -0,0 +1,128 @@
+package frc.robot.util;
+
+import static frc.robot.Constants.*;
+
+import edu.wpi.first.math.MathUtil;
+import frc.robot.subsystems.io.SwerveModuleIO;
+
+/**
+ * Scales the drive motors' supply current limits with the battery, so a
+ * long push sags the battery less instead of browning out the roboRIO.
+ *
+ * The drive limit is the lower of two caps. By battery voltage, it's the
+ * full POWER_DRIVE_MAX_CURRENT above POWER_VOLTAGE_HIGH, falling to
+ * POWER_DRIVE_MIN_CURRENT at POWER_VOLTAGE_LOW. Sags count right away,
+ * recovery is filtered so the limit doesn't bounce. By current, the
+ * measured steer draw comes out of POWER_CURRENT_BUDGET first and the
+ * drive motors split the rest. The drive limit is also scaled by how far
+ * the measured drive draw is from that share, so when the motors sit at
+ * their limit it settles where they draw exactly the share. Raising the
+ * cap only follows through the same filter as the voltage, so a lower
+ * limit that draws less doesn't jump straight back and go over again the
+ * next loop.
+ * Steer limits are never touched, so the wheels can always turn.
+ *
+ * The translation slew rate follows the drive limit, since acceleration
+ * is what the current buys. Both the drivebase's rate limiter and the
+ * driver input pipeline read it.
+ */
+public class PowerManager {
+    private final SwerveModuleIO[] modules;
+
+    private double filteredVoltage = Double.NaN;
+    private double filteredBudget = Double.NaN;
+    private double driveCurrent = 0;
+    private double steerCurrent = 0;
+    private double driveLimit = POWER_DRIVE_MAX_CURRENT;
+    private long changes = 0;
+
+    public PowerManager(SwerveModuleIO... modules) {
+        this.modules = modules;
+        for (SwerveModuleIO module : modules) {
+            module.setDriveCurrentLimit(driveLimit);
+        }
+    }
+
+    /**
+     * Call every loop.
+     *
+     * @return true if the drive limit changed and was sent to the modules
+     */
+    public boolean update(double batteryVoltage, double dtSeconds) {
+        if (!(batteryVoltage >= filteredVoltage)) {
+            filteredVoltage = batteryVoltage;
+        } else {
+            filteredVoltage += (batteryVoltage - filteredVoltage) * Math.min(1.0, dtSeconds / POWER_RECOVERY_SECONDS);
+        }
+
+        driveCurrent = 0;
+        steerCurrent = 0;
+        for (SwerveModuleIO module : modules) {
+            driveCurrent += module.getDriveCurrent();
+            steerCurrent += module.getSteerCurrent();
+        }
+
+        double headroom = MathUtil.clamp(
+            (filteredVoltage - POWER_VOLTAGE_LOW) / (POWER_VOLTAGE_HIGH - POWER_VOLTAGE_LOW), 0.0, 1.0);
+        double byVoltage = POWER_DRIVE_MIN_CURRENT + (POWER_DRIVE_MAX_CURRENT - POWER_DRIVE_MIN_CURRENT) * headroom;
+        double driveShare = POWER_CURRENT_BUDGET - Math.max(steerCurrent, 0.0);
+        double byBudget = driveShare / modules.length;
+        if (driveCurrent > 0.0) {
+            // Draw follows the limit while the limit is what holds the motors back,
+            // so this is the limit that would just fit the share
+            byBudget = Math.min(byBudget, driveLimit * Math.max(driveShare, 0.0) / driveCurrent);
+        }
+        if (!(byBudget >= filteredBudget)) {
+            filteredBudget = byBudget;
+        } else {
+            filteredBudget += (byBudget - filteredBudget) * Math.min(1.0, dtSeconds / POWER_RECOVERY_SECONDS);
+        }
+        double target = MathUtil.clamp(Math.min(byVoltage, filteredBudget), POWER_DRIVE_MIN_CURRENT, POWER_DRIVE_MAX_CURRENT);
+
+        // Small steps wait, except the last one to either end of the range
+        boolean end = target == POWER_DRIVE_MAX_CURRENT || target == POWER_DRIVE_MIN_CURRENT;
+        if (target == driveLimit || (!end && Math.abs(target - driveLimit) < POWER_LIMIT_STEP)) {
+            return false;
+        }
+        driveLimit = target;
+        for (SwerveModuleIO module : modules) {
+            module.setDriveCurrentLimit(driveLimit);
+        }
+        changes++;
+        return true;
+    }
+
+    /** Per drive motor supply current limit in amps, what was last sent */
+    public double getDriveLimit() {
+        return driveLimit;
+    }
+
+    /** How much of the full translation acceleration the drive limit allows */
+    public double getSlewScale() {
+        return driveLimit / POWER_DRIVE_MAX_CURRENT;
+    }
+
+    /** Battery voltage as the limits see it: sags right away, recovers slowly */
+    public double getFilteredVoltage() {
+        return filteredVoltage;
+    }
+
+    /** Summed supply current of every drive motor, amps */
+    public double getDriveCurrent() {
+        return driveCurrent;
+    }
+
+    /** Summed supply current of every steer motor, amps */
+    public double getSteerCurrent() {
+        return steerCurrent;
+    }
+
+    public double getTotalCurrent() {
+        return driveCurrent + steerCurrent;
+    }
+
+    /** Times the drive limit was changed */
+    public long getChangeCount() {
+        return changes;
+    }
+}
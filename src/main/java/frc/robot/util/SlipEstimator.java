@@ -0,0 +1,261 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Works out which swerve modules are slipping by comparing each wheel's
+ * measured speed to the speed the rest of the robot says it should have.
+ *
+ * The gyro yaw rate is taken as the true rotation. The robot's translation
+ * is a least-squares fit to the wheel speeds along each wheel's rolling
+ * direction (sideways wheel slide can't be seen by an encoder), leaning a
+ * little on the last fit for directions no wheel is pointed along. The module
+ * that disagrees the most is dropped and the fit redone, at most until two
+ * modules are left, so one or two spinning wheels don't drag the fit along
+ * with them. A module counts as slipping once its rolling speed is off by
+ * more than the threshold, and stays slipping until it's back under half.
+ *
+ * All of that sees wheels that disagree with each other, not all four
+ * spinning together. {@link #updateAcceleration(double, double, double)}
+ * carries a velocity forward on the gyro's accelerometer and pulls it back
+ * toward the wheel fit, and calls everything slipping while the two drift
+ * apart.
+ */
+public class SlipEstimator {
+    // Below this, the ratio threshold would be too tight to mean anything
+    private static final double MIN_RATIO_SPEED = 1.0;
+    // Weight of the last fit against one module's speed. Keeps the fit solvable,
+    // and from swinging wildly sideways, when the wheels all point about the same way.
+    private static final double PRIOR_WEIGHT = 0.1;
+    // How fast the accelerometer velocity is pulled back onto the wheels
+    private static final double ACCEL_TIME_CONSTANT_SECONDS = 0.25;
+
+    private final int n;
+    private final double[] moduleX;
+    private final double[] moduleY;
+    private final double slipSpeed;
+    private final double slipRatio;
+    private final double spinSpeed;
+
+    // Rolling speed each module should have, from the fit, m/s
+    private final double[] expected;
+    // Measured minus expected rolling speed, m/s
+    private final double[] slip;
+    private final boolean[] slipping;
+    private final boolean[] used;
+
+    private double vx;
+    private double vy;
+    private double omega;
+    private double priorVx;
+    private double priorVy;
+
+    private double accelVx = Double.NaN;
+    private double accelVy = Double.NaN;
+    private boolean spinning = false;
+
+    /**
+     * @param slipSpeed rolling speed error, m/s, a module can have and still grip
+     * @param slipRatio same, as a fraction of the expected speed, whichever is bigger
+     * @param spinSpeed how far, m/s, the wheels may get from the accelerometer
+     *     velocity before they all count as slipping
+     */
+    public SlipEstimator(double slipSpeed, double slipRatio, double spinSpeed, Translation2d... moduleLocations) {
+        n = moduleLocations.length;
+        moduleX = new double[n];
+        moduleY = new double[n];
+        for (int i = 0; i < n; i++) {
+            moduleX[i] = moduleLocations[i].getX();
+            moduleY[i] = moduleLocations[i].getY();
+        }
+        this.slipSpeed = slipSpeed;
+        this.slipRatio = slipRatio;
+        this.spinSpeed = spinSpeed;
+
+        expected = new double[n];
+        slip = new double[n];
+        slipping = new boolean[n];
+        used = new boolean[n];
+    }
+
+    /**
+     * @param speeds measured module speeds, m/s
+     * @param angles measured module angles, radians
+     * @param omega gyro yaw rate, rad/s CCW
+     */
+    public void update(double[] speeds, double[] angles, double omega) {
+        this.omega = omega;
+        priorVx = vx;
+        priorVy = vy;
+        for (int i = 0; i < n; i++) {
+            used[i] = true;
+        }
+
+        fit(speeds, angles);
+        for (int dropped = 0; dropped < n - 2; dropped++) {
+            int worst = -1;
+            double worstSlip = 0;
+            for (int i = 0; i < n; i++) {
+                if (used[i] && Math.abs(slip[i]) > threshold(i) && Math.abs(slip[i]) > worstSlip) {
+                    worst = i;
+                    worstSlip = Math.abs(slip[i]);
+                }
+            }
+            if (worst < 0) {
+                break;
+            }
+            used[worst] = false;
+            fit(speeds, angles);
+        }
+
+        for (int i = 0; i < n; i++) {
+            double error = Math.abs(slip[i]);
+            if (error > threshold(i)) {
+                slipping[i] = true;
+            } else if (error < threshold(i) / 2.0) {
+                slipping[i] = false;
+            }
+        }
+    }
+
+    private double threshold(int i) {
+        return Math.max(slipSpeed, slipRatio * Math.max(Math.abs(expected[i]), MIN_RATIO_SPEED));
+    }
+
+    /**
+     * Least-squares vx, vy from the used modules, then expected rolling speed
+     * and slip for all of them.
+     */
+    private void fit(double[] speeds, double[] angles) {
+        double a00 = PRIOR_WEIGHT;
+        double a01 = 0;
+        double a11 = PRIOR_WEIGHT;
+        double b0 = PRIOR_WEIGHT * priorVx;
+        double b1 = PRIOR_WEIGHT * priorVy;
+        for (int i = 0; i < n; i++) {
+            if (!used[i]) {
+                continue;
+            }
+            double c = Math.cos(angles[i]);
+            double s = Math.sin(angles[i]);
+            // What's left of the wheel speed once the rotation is taken out
+            double r = speeds[i] - omega * (moduleX[i] * s - moduleY[i] * c);
+            a00 += c * c;
+            a01 += c * s;
+            a11 += s * s;
+            b0 += c * r;
+            b1 += s * r;
+        }
+        double det = a00 * a11 - a01 * a01;
+        vx = (a11 * b0 - a01 * b1) / det;
+        vy = (a00 * b1 - a01 * b0) / det;
+
+        for (int i = 0; i < n; i++) {
+            expected[i] = rollingSpeed(i, angles[i], vx, vy);
+            slip[i] = speeds[i] - expected[i];
+        }
+    }
+
+    private double rollingSpeed(int i, double angle, double vx, double vy) {
+        return (vx - omega * moduleY[i]) * Math.cos(angle) + (vy + omega * moduleX[i]) * Math.sin(angle);
+    }
+
+    /**
+     * Steps the accelerometer velocity. Pass NaN acceleration to turn the
+     * check off, e.g. when there's no accelerometer or the robot is tilted.
+     *
+     * @param ax robot-relative acceleration, m/s^2
+     * @param ay robot-relative acceleration, m/s^2
+     */
+    public void updateAcceleration(double ax, double ay, double dtSeconds) {
+        if (Double.isNaN(ax) || Double.isNaN(ay) || Double.isNaN(accelVx)) {
+            accelVx = Double.isNaN(ax) || Double.isNaN(ay) ? Double.NaN : vx;
+            accelVy = Double.isNaN(ax) || Double.isNaN(ay) ? Double.NaN : vy;
+            spinning = false;
+            return;
+        }
+
+        // Robot-relative, so the frame turns under the velocity
+        double turn = -omega * dtSeconds;
+        double cos = Math.cos(turn);
+        double sin = Math.sin(turn);
+        double rotatedX = accelVx * cos - accelVy * sin;
+        double rotatedY = accelVx * sin + accelVy * cos;
+
+        double pull = Math.min(dtSeconds / ACCEL_TIME_CONSTANT_SECONDS, 1.0);
+        accelVx = rotatedX + ax * dtSeconds + (vx - rotatedX) * pull;
+        accelVy = rotatedY + ay * dtSeconds + (vy - rotatedY) * pull;
+
+        double error = Math.hypot(vx - accelVx, vy - accelVy);
+        if (error > spinSpeed) {
+            spinning = true;
+        } else if (error < spinSpeed / 2.0) {
+            spinning = false;
+        }
+    }
+
+    /**
+     * Rolling speed a module pointed at {@code angle} would have if it
+     * gripped, m/s. Uses the accelerometer velocity while every wheel is
+     * spinning, since the fit is no good then.
+     */
+    public double getGroundSpeed(int i, double angle) {
+        if (spinning) {
+            return rollingSpeed(i, angle, accelVx, accelVy);
+        }
+        return rollingSpeed(i, angle, vx, vy);
+    }
+
+    public boolean isSlipping(int i) {
+        return slipping[i] || spinning;
+    }
+
+    /**
+     * Every wheel at once, seen by the accelerometer.
+     */
+    public boolean isSpinning() {
+        return spinning;
+    }
+
+    public int getSlippingCount() {
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (isSlipping(i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Measured minus expected rolling speed, m/s */
+    public double getSlip(int i) {
+        return slip[i];
+    }
+
+    /** Expected rolling speed from the last update, m/s */
+    public double getExpectedSpeed(int i) {
+        return expected[i];
+    }
+
+    /** Fitted robot-relative velocity */
+    public double getVx() {
+        return vx;
+    }
+
+    public double getVy() {
+        return vy;
+    }
+
+    public void reset() {
+        for (int i = 0; i < n; i++) {
+            slipping[i] = false;
+            slip[i] = 0;
+            expected[i] = 0;
+        }
+        vx = 0;
+        vy = 0;
+        accelVx = Double.NaN;
+        accelVy = Double.NaN;
+        spinning = false;
+    }
+}
@@ -0,0 +1,64 @@
+package frc.robot.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-capacity single-producer/single-consumer queue of fixed-width
+ * double records, backed by one primitive array. Neither side locks or
+ * allocates. When full, new records are dropped and counted.
+ */
+public class SpscDoubleQueue {
+    private final int width;
+    private final int capacity;
+    private final double[] data;
+
+    // Producer only writes head, consumer only writes tail
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long dropped = 0;
+
+    public SpscDoubleQueue(int width, int capacity) {
+        this.width = width;
+        this.capacity = capacity;
+        this.data = new double[width * capacity];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Producer side.
+     *
+     * @return false if the queue was full and the record was dropped
+     */
+    public boolean offer(double[] record) {
+        long h = head.get();
+        if (h - tail.get() >= capacity) {
+            dropped++;
+            return false;
+        }
+        System.arraycopy(record, 0, data, (int) (h % capacity) * width, width);
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    /**
+     * Consumer side.
+     *
+     * @return false if there was nothing queued
+     */
+    public boolean poll(double[] out) {
+        long t = tail.get();
+        if (t >= head.get()) {
+            return false;
+        }
+        System.arraycopy(data, (int) (t % capacity) * width, out, 0, width);
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,185 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Preallocated swerve module states, stored as primitive arrays.
+ *
+ * Does the same math as SwerveDriveKinematics.toSwerveModuleStates,
+ * desaturateWheelSpeeds and SwerveModuleState.optimize, but in place,
+ * so the drive loop doesn't create garbage every 20ms.
+ */
+public class SwerveStateBuffer {
+    // Below this, m/s, a module's direction is too noisy to take a rate from
+    private static final double STEER_RATE_MIN_SPEED = 0.05;
+
+    // Module speeds in meters per second
+    public final double[] speeds;
+    // Module angles in radians
+    public final double[] angles;
+    // Module steer rates in radians per second, zero unless the dt overload of fromChassisSpeeds filled them
+    public final double[] steerRates;
+    // Unoptimized angle of each module from the last dt call, NaN when it wasn't moving
+    private final double[] lastAngles;
+
+    private final double[] moduleX;
+    private final double[] moduleY;
+
+    public SwerveStateBuffer(Translation2d... moduleLocations) {
+        int n = moduleLocations.length;
+        speeds = new double[n];
+        angles = new double[n];
+        steerRates = new double[n];
+        lastAngles = new double[n];
+        clearSteerRates();
+        moduleX = new double[n];
+        moduleY = new double[n];
+        for (int i = 0; i < n; i++) {
+            moduleX[i] = moduleLocations[i].getX();
+            moduleY[i] = moduleLocations[i].getY();
+        }
+    }
+
+    public int size() {
+        return speeds.length;
+    }
+
+    public double getModuleX(int i) {
+        return moduleX[i];
+    }
+
+    public double getModuleY(int i) {
+        return moduleY[i];
+    }
+
+    /**
+     * Inverse kinematics. Like WPILib, a fully stopped chassis keeps the
+     * previous module angles instead of snapping them all to zero.
+     */
+    public void fromChassisSpeeds(double vx, double vy, double omega) {
+        if (vx == 0.0 && vy == 0.0 && omega == 0.0) {
+            for (int i = 0; i < speeds.length; i++) {
+                speeds[i] = 0.0;
+            }
+            return;
+        }
+
+        for (int i = 0; i < speeds.length; i++) {
+            double x = vx - omega * moduleY[i];
+            double y = vy + omega * moduleX[i];
+            speeds[i] = Math.hypot(x, y);
+            angles[i] = speeds[i] > 1e-9 ? Math.atan2(y, x) : 0.0;
+        }
+    }
+
+    /**
+     * Second-order inverse kinematics, for speeds that will be held for
+     * {@code dtSeconds} while the robot turns.
+     *
+     * Robot-relative speeds held while turning carry the robot along an arc
+     * instead of the straight line the caller meant, so the path curves
+     * when translating and rotating together. The speeds are discretized
+     * first: swapped for the twist that, held over dt, ends at the pose the
+     * original speeds point to. It's the same as ChassisSpeeds.discretize
+     * in later WPILib.
+     *
+     * Steer rates come from how far each module's direction moved since
+     * the last call, for the steer feedforward. optimize() doesn't change
+     * them, a flipped module still turns the same way.
+     */
+    public void fromChassisSpeeds(double vx, double vy, double omega, double dtSeconds) {
+        // Pose2d.log of (vx dt, vy dt, omega dt), back over dt
+        double dtheta = omega * dtSeconds;
+        double halfDtheta = dtheta / 2.0;
+        double cosMinusOne = Math.cos(dtheta) - 1.0;
+        double halfThetaByTanOfHalfDtheta = Math.abs(cosMinusOne) < 1e-9
+            ? 1.0 - dtheta * dtheta / 12.0
+            : -(halfDtheta * Math.sin(dtheta)) / cosMinusOne;
+        fromChassisSpeeds(
+            vx * halfThetaByTanOfHalfDtheta + vy * halfDtheta,
+            -vx * halfDtheta + vy * halfThetaByTanOfHalfDtheta,
+            omega);
+
+        for (int i = 0; i < speeds.length; i++) {
+            if (speeds[i] > STEER_RATE_MIN_SPEED) {
+                steerRates[i] = Double.isNaN(lastAngles[i])
+                    ? 0.0
+                    : MathUtil.angleModulus(angles[i] - lastAngles[i]) / dtSeconds;
+                lastAngles[i] = angles[i];
+            } else {
+                steerRates[i] = 0.0;
+                lastAngles[i] = Double.NaN;
+            }
+        }
+    }
+
+    /**
+     * Zeroes the steer rates and forgets the last module directions, for
+     * when module targets came from somewhere other than the dt overload.
+     */
+    public void clearSteerRates() {
+        for (int i = 0; i < steerRates.length; i++) {
+            steerRates[i] = 0.0;
+            lastAngles[i] = Double.NaN;
+        }
+    }
+
+    /**
+     * Forward kinematics, least-squares robot-relative chassis speeds from
+     * module speeds and angles. Assumes the modules are laid out around the
+     * robot center.
+     *
+     * @param out filled with vx, vy, omega
+     */
+    public void toChassisSpeeds(double[] moduleSpeeds, double[] moduleAngles, double[] out) {
+        int n = moduleSpeeds.length;
+        double vx = 0;
+        double vy = 0;
+        double omega = 0;
+        double radiusSqSum = 0;
+        for (int i = 0; i < n; i++) {
+            double x = moduleSpeeds[i] * Math.cos(moduleAngles[i]);
+            double y = moduleSpeeds[i] * Math.sin(moduleAngles[i]);
+            vx += x;
+            vy += y;
+            omega += moduleX[i] * y - moduleY[i] * x;
+            radiusSqSum += moduleX[i] * moduleX[i] + moduleY[i] * moduleY[i];
+        }
+        out[0] = vx / n;
+        out[1] = vy / n;
+        out[2] = radiusSqSum > 0 ? omega / radiusSqSum : 0.0;
+    }
+
+    /**
+     * Scales every module down if any of them is above the max attainable speed.
+     */
+    public void desaturate(double maxSpeedMetersPerSecond) {
+        double realMax = 0.0;
+        for (double speed : speeds) {
+            realMax = Math.max(realMax, Math.abs(speed));
+        }
+        if (realMax > maxSpeedMetersPerSecond) {
+            double scale = maxSpeedMetersPerSecond / realMax;
+            for (int i = 0; i < speeds.length; i++) {
+                speeds[i] *= scale;
+            }
+        }
+    }
+
+    /**
+     * Flips any module that would need to turn more than 90 degrees, so it
+     * drives backwards instead.
+     *
+     * @param currentAngles current module angles in radians
+     */
+    public void optimize(double[] currentAngles) {
+        for (int i = 0; i < speeds.length; i++) {
+            double delta = MathUtil.angleModulus(angles[i] - currentAngles[i]);
+            if (Math.abs(delta) > Math.PI / 2.0) {
+                speeds[i] = -speeds[i];
+                angles[i] = MathUtil.angleModulus(angles[i] + Math.PI);
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+/**
+ * Publishes dashboard values once per loop instead of every subsystem doing
+ * its own SmartDashboard.putNumber.
+ *
+ * Publishers are resolved once at registration. Each value is only sent when
+ * it moved by more than its deadband, on a schedule of its min period, and
+ * the whole update stops once it has used up its time budget (the rest pick
+ * up where it left off next loop). Everything published in a loop goes out
+ * in one NetworkTables flush.
+ */
+public class Telemetry {
+    public static final double DEFAULT_DEADBAND = 1e-3;
+    public static final double DEFAULT_PERIOD_SECONDS = 0.02;
+    public static final double DEFAULT_BUDGET_SECONDS = 0.001;
+    // How early a loop can start and still send what's due, so jitter doesn't
+    // push a 20 ms value to every other loop
+    private static final double JITTER_TOLERANCE_SECONDS = 0.005;
+
+    private static Telemetry instance;
+
+    public static synchronized Telemetry getInstance() {
+        if (instance == null) {
+            instance = new Telemetry();
+        }
+        return instance;
+    }
+
+    private abstract static class Entry {
+        final long periodNanos;
+        final long toleranceNanos;
+        long nextDueNanos = 0;
+
+        Entry(double periodSeconds) {
+            periodNanos = (long) (periodSeconds * 1e9);
+            toleranceNanos = Math.min(periodNanos / 2, (long) (JITTER_TOLERANCE_SECONDS * 1e9));
+        }
+
+        // Returns true if anything was sent
+        abstract boolean publish();
+    }
+
+    private static class DoubleEntry extends Entry {
+        final DoublePublisher publisher;
+        final DoubleSupplier supplier;
+        final double deadband;
+        double lastValue = Double.NaN;
+
+        DoubleEntry(DoublePublisher publisher, DoubleSupplier supplier, double deadband, double periodSeconds) {
+            super(periodSeconds);
+            this.publisher = publisher;
+            this.supplier = supplier;
+            this.deadband = deadband;
+        }
+
+        @Override
+        boolean publish() {
+            double value = supplier.getAsDouble();
+            if (!Double.isNaN(lastValue) && Math.abs(value - lastValue) <= deadband) {
+                return false;
+            }
+            lastValue = value;
+            publisher.set(value);
+            return true;
+        }
+    }
+
+    private static class ActionEntry extends Entry {
+        final Runnable action;
+
+        ActionEntry(Runnable action, double periodSeconds) {
+            super(periodSeconds);
+            this.action = action;
+        }
+
+        @Override
+        boolean publish() {
+            action.run();
+            return true;
+        }
+    }
+
+    private final NetworkTableInstance nt = NetworkTableInstance.getDefault();
+    private final NetworkTable table = nt.getTable("SmartDashboard");
+    private final ArrayList<Entry> entries = new ArrayList<>();
+
+    private long budgetNanos = (long) (DEFAULT_BUDGET_SECONDS * 1e9);
+    private int cursor = 0;
+
+    private long lastUpdateNanos = 0;
+    private int lastPublished = 0;
+    private int lastSkipped = 0;
+
+    private Telemetry() {}
+
+    /**
+     * Publishes {@code supplier} under SmartDashboard/{@code key}.
+     *
+     * @param deadband smallest change worth sending
+     * @param minPeriodSeconds fastest this value will be sent
+     */
+    public void addDouble(String key, DoubleSupplier supplier, double deadband, double minPeriodSeconds) {
+        entries.add(new DoubleEntry(table.getDoubleTopic(key).publish(), supplier, deadband, minPeriodSeconds));
+    }
+
+    public void addDouble(String key, DoubleSupplier supplier) {
+        addDouble(key, supplier, DEFAULT_DEADBAND, DEFAULT_PERIOD_SECONDS);
+    }
+
+    /**
+     * Runs {@code action} at most every {@code minPeriodSeconds}, for things
+     * that publish themselves (like Field2d).
+     */
+    public void addAction(Runnable action, double minPeriodSeconds) {
+        entries.add(new ActionEntry(action, minPeriodSeconds));
+    }
+
+    public void setBudget(double seconds) {
+        budgetNanos = (long) (seconds * 1e9);
+    }
+
+    /**
+     * Call once at the end of every loop.
+     */
+    public void update() {
+        long start = System.nanoTime();
+        int n = entries.size();
+        int published = 0;
+        int visited = 0;
+
+        while (visited < n) {
+            if (System.nanoTime() - start > budgetNanos) {
+                break;
+            }
+
+            Entry entry = entries.get(cursor);
+            cursor = (cursor + 1) % n;
+            visited++;
+
+            if (start - entry.nextDueNanos < -entry.toleranceNanos) {
+                continue;
+            }
+            if (entry.publish()) {
+                // From when it was due, not when this loop started, so an early loop doesn't shift it
+                entry.nextDueNanos += entry.periodNanos;
+                if (start - entry.nextDueNanos >= 0) {
+                    // A whole period behind, start over from now instead of catching up
+                    entry.nextDueNanos = start + entry.periodNanos;
+                }
+                published++;
+            }
+        }
+
+        if (published > 0) {
+            nt.flush();
+        }
+
+        lastPublished = published;
+        lastSkipped = n - visited;
+        lastUpdateNanos = System.nanoTime() - start;
+    }
+
+    public int getLastPublishedCount() {
+        return lastPublished;
+    }
+
+    /** Entries that didn't get looked at last loop because the budget ran out. */
+    public int getLastSkippedCount() {
+        return lastSkipped;
+    }
+
+    public double getLastUpdateSeconds() {
+        return lastUpdateNanos / 1e9;
+    }
+}
@@ -0,0 +1,77 @@
+package frc.robot.util;
+
+/**
+ * Fixed-size histogram of durations in nanoseconds. Buckets are log-spaced
+ * with 8 buckets per power of two, so percentiles are good to about 12% and
+ * recording never allocates.
+ */
+public class TimingHistogram {
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BITS = 3;
+    private static final int BUCKETS = (63 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long total = 0;
+    private long max = 0;
+
+    private static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) Math.max(nanos, 0);
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) ((nanos >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1));
+        return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exp = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exp - SUB_BITS)) - 1;
+    }
+
+    public void record(long nanos) {
+        counts[bucketOf(nanos)]++;
+        total++;
+        if (nanos > max) {
+            max = nanos;
+        }
+    }
+
+    public long getCount() {
+        return total;
+    }
+
+    public long getMaxNanos() {
+        return max;
+    }
+
+    /**
+     * @param percentile 0 to 1
+     * @return upper edge of the bucket holding that percentile, capped at the max seen
+     */
+    public long getPercentileNanos(double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(target, 1)) {
+                return Math.min(upperBoundOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = 0;
+        }
+        total = 0;
+        max = 0;
+    }
+}
@@ -0,0 +1,287 @@
+package frc.robot.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.pathplanner.lib.PathPlanner;
+import com.pathplanner.lib.PathPlannerTrajectory;
+import com.pathplanner.lib.PathPlannerTrajectory.EventMarker;
+import com.pathplanner.lib.PathPlannerTrajectory.PathPlannerState;
+
+import frc.robot.Constants;
+
+/**
+ * Binary cache of PathPlanner paths, pre-sampled at a fixed step on the
+ * desktop so the roboRIO doesn't have to generate them at boot.
+ *
+ * The build writes it with {@link #main(String...)} (./gradlew
+ * buildTrajectoryCache, also run before every jar/deploy) and the robot
+ * memory-maps it with {@link #open(File)}. Every path keeps the CRC of the
+ * .path file it came from, so a stale entry can be spotted and regenerated.
+ *
+ * Layout, big-endian:
+ * <pre>
+ * int magic, int version, int autoCount
+ * per auto:  string name, long crc, int pathCount
+ * per path:  double dt, int sampleCount, int markerCount,
+ *            per marker: double time, strings names
+ *            start stop event, end stop event,
+ *            padding to 4 bytes, sampleCount * WIDTH floats
+ * string:    int byte length, UTF-8 bytes
+ * strings:   int count, that many strings
+ * stop event: strings names, string execution, string wait, double waitTime
+ * </pre>
+ */
+public class TrajectoryCache {
+    public static final String FILE_NAME = "trajectories.bin";
+    public static final double SAMPLE_PERIOD_SECONDS = 0.02;
+
+    private static final int MAGIC = 0x54524a43; // "TRJC"
+    private static final int VERSION = 1;
+
+    /**
+     * The paths of one .path file, in order.
+     */
+    public static class Entry {
+        public final long crc;
+        public final List<CachedTrajectory> paths;
+
+        Entry(long crc, List<CachedTrajectory> paths) {
+            this.crc = crc;
+            this.paths = paths;
+        }
+    }
+
+    private final Map<String, Entry> entries;
+
+    private TrajectoryCache(Map<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * @return null if nothing was cached under {@code name}
+     */
+    public Entry get(String name) {
+        return entries.get(name);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public static long crc(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(Files.readAllBytes(file.toPath()));
+        return crc.getValue();
+    }
+
+    /**
+     * Memory-maps a cache file. The samples are read straight out of the
+     * mapping, only the markers and stop events are copied onto the heap.
+     */
+    public static TrajectoryCache open(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException(file + " is not a trajectory cache");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException(file + " is cache version " + version + ", expected " + VERSION);
+        }
+
+        Map<String, Entry> entries = new HashMap<>();
+        int autoCount = buffer.getInt();
+        for (int a = 0; a < autoCount; a++) {
+            String name = readString(buffer);
+            long crc = buffer.getLong();
+            int pathCount = buffer.getInt();
+            List<CachedTrajectory> paths = new ArrayList<>(pathCount);
+            for (int p = 0; p < pathCount; p++) {
+                paths.add(readPath(buffer));
+            }
+            entries.put(name, new Entry(crc, Collections.unmodifiableList(paths)));
+        }
+        return new TrajectoryCache(entries);
+    }
+
+    private static CachedTrajectory readPath(ByteBuffer buffer) {
+        double dt = buffer.getDouble();
+        int sampleCount = buffer.getInt();
+
+        int markerCount = buffer.getInt();
+        double[] markerTimes = new double[markerCount];
+        List<List<String>> markerNames = new ArrayList<>(markerCount);
+        for (int i = 0; i < markerCount; i++) {
+            markerTimes[i] = buffer.getDouble();
+            markerNames.add(readStrings(buffer));
+        }
+
+        CachedTrajectory.StopEvent startEvent = readStopEvent(buffer);
+        CachedTrajectory.StopEvent endEvent = readStopEvent(buffer);
+
+        buffer.position(align(buffer.position()));
+        int length = sampleCount * CachedTrajectory.WIDTH * Float.BYTES;
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+
+        return new CachedTrajectory(dt, sampleCount, slice.asFloatBuffer(),
+            markerTimes, markerNames, startEvent, endEvent);
+    }
+
+    private static CachedTrajectory.StopEvent readStopEvent(ByteBuffer buffer) {
+        List<String> names = readStrings(buffer);
+        String execution = readString(buffer);
+        String wait = readString(buffer);
+        double waitTime = buffer.getDouble();
+        return new CachedTrajectory.StopEvent(names, execution, wait, waitTime);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readStrings(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(readString(buffer));
+        }
+        return Collections.unmodifiableList(strings);
+    }
+
+    private static int align(int position) {
+        return (position + Float.BYTES - 1) / Float.BYTES * Float.BYTES;
+    }
+
+    /**
+     * Generates every .path file in {@code pathDirectory} with
+     * PATH_CONSTRAINTS and writes them all to {@code out}.
+     */
+    public static void write(File pathDirectory, File out) throws IOException {
+        File[] files = pathDirectory.listFiles((dir, name) -> name.endsWith(".path"));
+        if (files == null) {
+            files = new File[0];
+        }
+        Arrays.sort(files);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(files.length);
+
+        for (File file : files) {
+            String name = file.getName().substring(0, file.getName().length() - ".path".length());
+            List<PathPlannerTrajectory> group = PathPlanner.loadPathGroup(name, Constants.PATH_CONSTRAINTS);
+            if (group == null) {
+                throw new IOException("Unable to load path " + file);
+            }
+
+            writeString(data, name);
+            data.writeLong(crc(file));
+            data.writeInt(group.size());
+            int samples = 0;
+            for (PathPlannerTrajectory trajectory : group) {
+                samples += writePath(data, trajectory);
+            }
+            System.out.println(String.format("%s: %d paths, %d samples", name, group.size(), samples));
+        }
+
+        data.flush();
+        File parent = out.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        Files.write(out.toPath(), bytes.toByteArray());
+        System.out.println(String.format("Wrote %d autos, %d bytes to %s", files.length, bytes.size(), out));
+    }
+
+    private static int writePath(DataOutputStream data, PathPlannerTrajectory trajectory) throws IOException {
+        double total = trajectory.getTotalTimeSeconds();
+        // Always end on the last state, even if it isn't on a step
+        int sampleCount = (int) Math.ceil(total / SAMPLE_PERIOD_SECONDS) + 1;
+
+        data.writeDouble(SAMPLE_PERIOD_SECONDS);
+        data.writeInt(sampleCount);
+
+        List<EventMarker> markers = trajectory.getMarkers();
+        data.writeInt(markers.size());
+        for (EventMarker marker : markers) {
+            data.writeDouble(marker.timeSeconds);
+            writeStrings(data, marker.names);
+        }
+
+        writeStopEvent(data, trajectory.getStartStopEvent());
+        writeStopEvent(data, trajectory.getEndStopEvent());
+
+        while (data.size() % Float.BYTES != 0) {
+            data.writeByte(0);
+        }
+        for (int i = 0; i < sampleCount; i++) {
+            PathPlannerState state = trajectory.sample(Math.min(i * SAMPLE_PERIOD_SECONDS, total));
+            data.writeFloat((float) state.poseMeters.getX());
+            data.writeFloat((float) state.poseMeters.getY());
+            data.writeFloat((float) state.poseMeters.getRotation().getRadians());
+            data.writeFloat((float) state.velocityMetersPerSecond);
+            data.writeFloat((float) state.accelerationMetersPerSecondSq);
+            data.writeFloat((float) state.holonomicRotation.getRadians());
+            data.writeFloat((float) state.holonomicAngularVelocityRadPerSec);
+        }
+        return sampleCount;
+    }
+
+    private static void writeStopEvent(DataOutputStream data, PathPlannerTrajectory.StopEvent event) throws IOException {
+        writeStrings(data, event.names);
+        writeString(data, event.executionBehavior.name());
+        writeString(data, event.waitBehavior.name());
+        data.writeDouble(event.waitTime);
+    }
+
+    private static void writeString(DataOutputStream data, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static void writeStrings(DataOutputStream data, List<String> strings) throws IOException {
+        data.writeInt(strings.size());
+        for (String string : strings) {
+            writeString(data, string);
+        }
+    }
+
+    /**
+     * ./gradlew buildTrajectoryCache
+     */
+    public static void main(String... args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: TrajectoryCache <path directory> <out.bin>");
+            System.exit(1);
+        }
+        write(new File(args[0]), new File(args[1]));
+    }
+}
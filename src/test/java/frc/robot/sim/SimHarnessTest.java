@@ -0,0 +1,49 @@
+package frc.robot.sim;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Whole-robot runs on the SimHarness. One harness for the class, since the
+ * CommandScheduler and the HAL are global.
+ */
+class SimHarnessTest {
+    private static SimHarness harness;
+
+    @BeforeAll
+    static void createHarness() {
+        harness = new SimHarness();
+    }
+
+    @Test
+    void idleStaysPut() {
+        SimHarness.Result result = harness.run(new Scenario("idle", 2, (t, c) -> {}));
+
+        assertEquals(0.0, result.finalPose.getTranslation().getNorm(), 0.01);
+        assertEquals(0.0, result.finalPose.getRotation().getDegrees(), 0.5);
+    }
+
+    @Test
+    void fullForwardDrivesDownfield() {
+        SimHarness.Result result = harness.run(new Scenario("full-forward", 2, (t, c) -> c.setLeftY(-1)));
+
+        assertTrue(result.finalPose.getX() > 1.0, "ended at x " + result.finalPose.getX());
+        assertEquals(0.0, result.finalPose.getY(), 0.05);
+        assertEquals(0.0, result.finalPose.getRotation().getDegrees(), 2.0);
+    }
+
+    @Test
+    void secondOrderKinematicsCutsSkew() {
+        SimHarness.Result[] skew = harness.runSkewComparison();
+        double firstOrder = SimHarness.maxCrossTrack(skew[0]);
+        double secondOrder = SimHarness.maxCrossTrack(skew[1]);
+
+        // Otherwise the scenario isn't spinning fast enough to show anything
+        assertTrue(firstOrder > 0.1, "first-order drift " + firstOrder + " m");
+        assertTrue(secondOrder < 0.5 * firstOrder,
+            "second-order drift " + secondOrder + " m against first-order " + firstOrder + " m");
+        assertTrue(harness.getDrivebase().isSecondOrderKinematicsEnabled());
+    }
+}
@@ -0,0 +1,113 @@
+package frc.robot.subsystems;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.sun.management.ThreadMXBean;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import frc.robot.Systems;
+import frc.robot.commands.DriveLockedRotCommand;
+
+/**
+ * periodic() on simulated modules, checking that a steady-state loop
+ * allocates nothing.
+ *
+ * The modules aren't stepped, so the sensors hold still while the commanded
+ * speeds keep changing. Every loop then runs the whole output side:
+ * kinematics, optimize, power limits, logging and the module outputs.
+ * Once the sensors move, WPILib's pose estimator allocates on every update,
+ * and that's outside what this covers.
+ *
+ * One Drivebase for the class: every instance registers itself with the
+ * CommandScheduler, Telemetry and the LoopProfiler for good.
+ */
+class DrivebaseAllocationTest {
+    private static final int WARMUP_LOOPS = 20000;
+    private static final int MEASURED_LOOPS = 1000;
+
+    private static Drivebase drivebase;
+
+    private final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private int loop = 0;
+
+    @BeforeAll
+    static void createDrivebase() {
+        assertTrue(HAL.initialize(500, 0));
+        // The stance only engages while enabled
+        DriverStationSim.setEnabled(true);
+        DriverStationSim.notifyNewData();
+        drivebase = Drivebase.createHeadless();
+    }
+
+    @AfterEach
+    void releaseStance() {
+        drivebase.setBrakeStance(false);
+        drivebase.periodic();
+    }
+
+    private void drivingLoop() {
+        loop++;
+        double t = loop * 0.02;
+        drivebase.driveRaw(2.0 * Math.cos(t), 2.0 * Math.sin(t), Math.sin(0.7 * t));
+        drivebase.periodic();
+    }
+
+    private void headingHoldLoop(DriveLockedRotCommand command) {
+        loop++;
+        command.execute();
+        drivebase.periodic();
+    }
+
+    private void stanceLoop() {
+        drivebase.setBrakeStance(true);
+        drivebase.periodic();
+    }
+
+    private long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // Bytes allocated by MEASURED_LOOPS runs of loop, less the cost of measuring
+    private long measure(Runnable loop) {
+        for (int i = 0; i < WARMUP_LOOPS; i++) {
+            loop.run();
+        }
+        long start = allocatedBytes();
+        long overhead = allocatedBytes() - start;
+        start = allocatedBytes();
+        for (int i = 0; i < MEASURED_LOOPS; i++) {
+            loop.run();
+        }
+        return allocatedBytes() - start - overhead;
+    }
+
+    @Test
+    void drivingDoesNotAllocate() {
+        assertEquals(0, measure(this::drivingLoop), "bytes allocated over " + MEASURED_LOOPS + " loops");
+    }
+
+    @Test
+    void headingHoldDoesNotAllocate() {
+        // Already facing the target, so this is the hold after the turn
+        DriveLockedRotCommand command = new DriveLockedRotCommand(new Systems(drivebase),
+            () -> 2.0 * Math.cos(loop * 0.02), () -> 2.0 * Math.sin(loop * 0.02),
+            drivebase.getGyro().getYawDegrees(), () -> false);
+        command.initialize();
+
+        assertEquals(0, measure(() -> headingHoldLoop(command)), "bytes allocated over " + MEASURED_LOOPS + " loops");
+        command.end(true);
+    }
+
+    @Test
+    void stanceDoesNotAllocate() {
+        assertEquals(0, measure(this::stanceLoop), "bytes allocated over " + MEASURED_LOOPS + " loops");
+        assertTrue(drivebase.isInStance());
+    }
+}
@@ -0,0 +1,221 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class InputStagesTest {
+    private static final double DT = 0.02;
+    private static final double EPSILON = 1e-9;
+
+    private static double[] apply(InputStage stage, double x, double y, double omega) {
+        double[] input = {x, y, omega};
+        stage.apply(input, DT);
+        return input;
+    }
+
+    private static double length(double[] input) {
+        return Math.hypot(input[InputStage.X], input[InputStage.Y]);
+    }
+
+    @Test
+    void radialDeadbandZeroesInsideTheCircle() {
+        InputStage deadband = InputStages.radialDeadband(0.15);
+
+        assertArrayEquals(new double[] {0, 0, 0}, apply(deadband, 0.1, 0.1, 0.1), EPSILON);
+        assertArrayEquals(new double[] {0, 0, 0}, apply(deadband, -0.14, 0, -0.14), EPSILON);
+        // Each axis is inside the deadband but the vector isn't
+        assertTrue(length(apply(deadband, 0.12, 0.12, 0)) > 0);
+    }
+
+    @Test
+    void radialDeadbandRescalesFromTheEdge() {
+        InputStage deadband = InputStages.radialDeadband(0.2);
+
+        assertEquals(0.5, length(apply(deadband, 0.6, 0, 0)), EPSILON);
+        assertEquals(1.0, length(apply(deadband, 0, -1.0, 0)), EPSILON);
+        assertEquals(-0.5, apply(deadband, 0, 0, -0.6)[InputStage.OMEGA], EPSILON);
+    }
+
+    @Test
+    void radialDeadbandIsTheSameInEveryDirection() {
+        InputStage deadband = InputStages.radialDeadband(0.15);
+        double straight = length(apply(deadband, 0.5, 0, 0));
+
+        for (int i = 0; i < 16; i++) {
+            double angle = i * Math.PI / 8.0;
+            double[] output = apply(deadband, 0.5 * Math.cos(angle), 0.5 * Math.sin(angle), 0);
+            assertEquals(straight, length(output), EPSILON);
+            assertEquals(straight * Math.cos(angle), output[InputStage.X], EPSILON);
+            assertEquals(straight * Math.sin(angle), output[InputStage.Y], EPSILON);
+        }
+    }
+
+    @Test
+    void radialDeadbandClampsTheCorners() {
+        double[] output = apply(InputStages.radialDeadband(0.15), 1.0, 1.0, 0);
+
+        assertEquals(1.0, length(output), EPSILON);
+        assertEquals(output[InputStage.X], output[InputStage.Y], EPSILON);
+    }
+
+    @Test
+    void responseCurveShapesLengthAndKeepsDirection() {
+        InputStage curve = InputStages.responseCurve(InputStages.power(2), InputStages.power(3));
+        double[] output = apply(curve, -0.3, 0.4, -0.5);
+
+        assertEquals(0.25, length(output), EPSILON);
+        assertEquals(Math.atan2(0.4, -0.3), Math.atan2(output[InputStage.Y], output[InputStage.X]), EPSILON);
+        assertEquals(-0.125, output[InputStage.OMEGA], EPSILON);
+    }
+
+    @Test
+    void responseCurveLeavesZeroAlone() {
+        InputStage curve = InputStages.responseCurve(InputStages.power(2), InputStages.power(2));
+
+        assertArrayEquals(new double[] {0, 0, 0}, apply(curve, 0, 0, 0), 0.0);
+    }
+
+    @Test
+    void cubicBlendEndsAtTheSamePlaces() {
+        for (double weight : new double[] {0.0, 0.5, 1.0}) {
+            assertEquals(0.0, InputStages.cubicBlend(weight).applyAsDouble(0.0), EPSILON);
+            assertEquals(1.0, InputStages.cubicBlend(weight).applyAsDouble(1.0), EPSILON);
+        }
+        assertEquals(0.5 * 0.125 + 0.5 * 0.5, InputStages.cubicBlend(0.5).applyAsDouble(0.5), EPSILON);
+    }
+
+    /**
+     * Steps {@code limiter} toward a fixed target from rest and checks the
+     * acceleration and jerk between every pair of loops.
+     *
+     * @return loops until the output reached the target
+     */
+    private static int driveTo(InputStage limiter, double x, double y, double maxAcceleration, double maxJerk) {
+        double lastX = 0;
+        double lastY = 0;
+        double lastAx = 0;
+        double lastAy = 0;
+        for (int i = 1; i <= 1000; i++) {
+            double[] output = apply(limiter, x, y, 0);
+            double ax = (output[InputStage.X] - lastX) / DT;
+            double ay = (output[InputStage.Y] - lastY) / DT;
+            assertTrue(Math.hypot(ax, ay) <= maxAcceleration + 1e-6, "acceleration at loop " + i);
+            // Never past the target along the way there
+            assertTrue((x - output[InputStage.X]) * x + (y - output[InputStage.Y]) * y >= -EPSILON, "overshoot at loop " + i);
+
+            if (output[InputStage.X] == x && output[InputStage.Y] == y) {
+                // The loop that lands on the target drops whatever acceleration is
+                // left, which is less than one more jerk step
+                assertTrue(Math.hypot(ax - lastAx, ay - lastAy) / DT <= 2.0 * maxJerk + 1e-6, "jerk settling");
+                return i;
+            }
+            assertTrue(Math.hypot(ax - lastAx, ay - lastAy) / DT <= maxJerk + 1e-6, "jerk at loop " + i);
+            lastX = output[InputStage.X];
+            lastY = output[InputStage.Y];
+            lastAx = ax;
+            lastAy = ay;
+        }
+        fail("never reached the target");
+        return -1;
+    }
+
+    @Test
+    void rateLimiterLimitsAcceleration() {
+        InputStage limiter = new InputStages.RateLimiter(4.0, Double.POSITIVE_INFINITY, 10.0);
+        int loops = driveTo(limiter, 2.0, 0, 4.0, Double.POSITIVE_INFINITY);
+
+        // 2 m/s at 4 m/s^2 is half a second
+        assertEquals(25, loops, 1);
+    }
+
+    @Test
+    void rateLimiterLimitsTheVectorNotEachAxis() {
+        double diagonal = 2.0 / Math.sqrt(2.0);
+        int straight = driveTo(new InputStages.RateLimiter(4.0, Double.POSITIVE_INFINITY, 10.0), 2.0, 0, 4.0, Double.POSITIVE_INFINITY);
+        int diagonalLoops = driveTo(new InputStages.RateLimiter(4.0, Double.POSITIVE_INFINITY, 10.0), diagonal, diagonal, 4.0, Double.POSITIVE_INFINITY);
+
+        assertEquals(straight, diagonalLoops);
+    }
+
+    @Test
+    void rateLimiterLimitsJerkWithoutOvershoot() {
+        int loops = driveTo(new InputStages.RateLimiter(8.0, 80.0, 10.0), 3.0, -1.0, 8.0, 80.0);
+
+        // Slower than the acceleration limit alone, since it has to ramp
+        assertTrue(loops > (int) Math.ceil(Math.hypot(3.0, -1.0) / 8.0 / DT));
+    }
+
+    @Test
+    void rateLimiterSettlesOnSmallSteps() {
+        InputStage limiter = new InputStages.RateLimiter(8.0, 80.0, 10.0);
+        driveTo(limiter, 0.01, 0, 8.0, 80.0);
+
+        assertArrayEquals(new double[] {0.01, 0, 0}, apply(limiter, 0.01, 0, 0), 0.0);
+    }
+
+    @Test
+    void rateLimiterDoesNotOvershootWhenTheTargetTurns() {
+        InputStage limiter = new InputStages.RateLimiter(8.0, 80.0, 10.0);
+        for (int i = 0; i < 100; i++) {
+            apply(limiter, 2.0, 0, 0);
+        }
+        for (int i = 0; i < 200; i++) {
+            double[] output = apply(limiter, 0, 2.0, 0);
+            assertTrue(output[InputStage.Y] <= 2.0 + EPSILON);
+            assertTrue(output[InputStage.X] >= -EPSILON);
+        }
+        assertArrayEquals(new double[] {0, 2.0, 0}, apply(limiter, 0, 2.0, 0), EPSILON);
+    }
+
+    @Test
+    void rateLimiterLimitsAngularAcceleration() {
+        InputStage limiter = new InputStages.RateLimiter(8.0, 80.0, 10.0);
+
+        assertEquals(0.2, apply(limiter, 0, 0, 3.0)[InputStage.OMEGA], EPSILON);
+        assertEquals(0.4, apply(limiter, 0, 0, 3.0)[InputStage.OMEGA], EPSILON);
+        assertEquals(0.2, apply(limiter, 0, 0, -3.0)[InputStage.OMEGA], EPSILON);
+    }
+
+    @Test
+    void rateLimiterCapsAccelerationAtTheTipLimit() {
+        // 0.6 m long, 0.4 m wide, CoG 0.5 m up: g * 0.3 / 0.5 forward, g * 0.2 / 0.5 sideways
+        double forward = 9.81 * 0.3 / 0.5;
+        double sideways = 9.81 * 0.2 / 0.5;
+        InputStage limiter = new InputStages.RateLimiter(20.0, Double.POSITIVE_INFINITY, 10.0)
+            .withTipLimit(0.5, 0.6, 0.4, 1.0, null);
+
+        assertEquals(forward * DT, apply(limiter, 3.0, 0, 0)[InputStage.X], EPSILON);
+        limiter.reset(new double[] {0, 0, 0});
+        assertEquals(sideways * DT, apply(limiter, 0, 3.0, 0)[InputStage.Y], EPSILON);
+    }
+
+    @Test
+    void rateLimiterTipLimitFollowsHeading() {
+        double sideways = 9.81 * 0.2 / 0.5 * 0.8;
+        // Facing +y, so field +y is robot forward and field +x is robot sideways
+        InputStage limiter = new InputStages.RateLimiter(20.0, Double.POSITIVE_INFINITY, 10.0)
+            .withTipLimit(0.5, 0.6, 0.4, 0.8, () -> Math.PI / 2.0);
+
+        assertEquals(sideways * DT, apply(limiter, 3.0, 0, 0)[InputStage.X], EPSILON);
+    }
+
+    @Test
+    void rateLimiterTipLimitOnlyLowersTheLimit() {
+        InputStage limiter = new InputStages.RateLimiter(2.0, Double.POSITIVE_INFINITY, 10.0)
+            .withTipLimit(0.5, 0.6, 0.4, 1.0, null);
+
+        assertEquals(2.0 * DT, apply(limiter, 3.0, 0, 0)[InputStage.X], EPSILON);
+    }
+
+    @Test
+    void rateLimiterFollowsTheAccelerationScale() {
+        double[] scale = {0.5};
+        InputStage limiter = new InputStages.RateLimiter(4.0, Double.POSITIVE_INFINITY, 10.0)
+            .withAccelerationScale(() -> scale[0]);
+
+        assertEquals(2.0 * DT, apply(limiter, 3.0, 0, 0)[InputStage.X], EPSILON);
+        scale[0] = 1.0;
+        assertEquals(6.0 * DT, apply(limiter, 3.0, 0, 0)[InputStage.X], EPSILON);
+    }
+}
@@ -0,0 +1,50 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import frc.robot.subsystems.Drivebase;
+
+class OdometryFrontEndTest {
+    private static final double DT = 0.004;
+
+    @Test
+    void gyroResetIsNotRotation() {
+        OdometryFrontEnd frontEnd = new OdometryFrontEnd(Drivebase.MODULE_LOCATIONS);
+        double[] distances = new double[4];
+        double[] angles = new double[4];
+        frontEnd.reset(distances);
+
+        // Driving straight at 2 m/s, then the yaw is zeroed from 90 degrees partway
+        double yaw = 90.0;
+        for (int i = 0; i < 100; i++) {
+            if (i == 50) {
+                yaw = 0.0;
+            }
+            for (int m = 0; m < 4; m++) {
+                distances[m] += 2.0 * DT;
+            }
+            frontEnd.update(i * DT, distances, angles, yaw);
+            for (int m = 0; m < 4; m++) {
+                assertFalse(frontEnd.getSlipEstimator().isSlipping(m), "module " + m + " slipping at sample " + i);
+            }
+        }
+
+        assertEquals(1, frontEnd.getYawResetCount());
+        assertEquals(0, frontEnd.getReplacedCount());
+        for (int m = 0; m < 4; m++) {
+            assertEquals(distances[m], frontEnd.getDistances()[m], 1e-9);
+        }
+    }
+
+    @Test
+    void rollCountsAsTilt() {
+        assertTrue(OdometryFrontEnd.isLevel(0.0, 0.0));
+        assertTrue(OdometryFrontEnd.isLevel(3.0, -3.0));
+        assertFalse(OdometryFrontEnd.isLevel(0.0, 12.0), "rolled across the charge station");
+        assertFalse(OdometryFrontEnd.isLevel(-12.0, 0.0));
+        // Each under the limit, together over it
+        assertFalse(OdometryFrontEnd.isLevel(4.0, 4.0));
+    }
+}
@@ -0,0 +1,95 @@
+package frc.robot.util;
+
+import static frc.robot.Constants.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import frc.robot.subsystems.io.SwerveModuleIO;
+
+class PowerManagerTest {
+    private static final double DT = 0.02;
+
+    /** Pushing against something: every drive motor draws whatever its limit allows */
+    private static class StalledModule implements SwerveModuleIO {
+        double ampsPerLimitAmp;
+        double limit;
+
+        StalledModule(double ampsPerLimitAmp) {
+            this.ampsPerLimitAmp = ampsPerLimitAmp;
+        }
+
+        @Override
+        public double getDriveDistance() {
+            return 0;
+        }
+
+        @Override
+        public double getDriveVelocity() {
+            return 0;
+        }
+
+        @Override
+        public double getSteerAngle() {
+            return 0;
+        }
+
+        @Override
+        public void set(double driveVoltage, double steerAngle, double steerRate) {}
+
+        @Override
+        public void setVelocity(double velocity, double feedforwardVoltage, double steerAngle, double steerRate) {}
+
+        @Override
+        public double getDriveCurrent() {
+            return limit * ampsPerLimitAmp;
+        }
+
+        @Override
+        public void setDriveCurrentLimit(double amps) {
+            limit = amps;
+        }
+    }
+
+    @Test
+    void overBudgetDoesNotOscillate() {
+        // Four motors drawing 1.5x the budget at the full limit
+        StalledModule[] modules = new StalledModule[4];
+        for (int i = 0; i < modules.length; i++) {
+            modules[i] = new StalledModule(POWER_CURRENT_BUDGET / 4 / POWER_DRIVE_MAX_CURRENT * 1.5);
+        }
+        PowerManager power = new PowerManager(modules);
+
+        int changes = 0;
+        for (int i = 0; i < 500; i++) {
+            if (power.update(12.0, DT) && i >= 50) {
+                changes++;
+            }
+        }
+
+        // Settled on the budget, and stays there
+        assertEquals(POWER_CURRENT_BUDGET, power.getDriveCurrent(), 1e-6);
+        assertEquals(0, changes, "limit changes after settling");
+    }
+
+    @Test
+    void recoversWhenTheLoadGoes() {
+        StalledModule[] modules = new StalledModule[4];
+        for (int i = 0; i < modules.length; i++) {
+            modules[i] = new StalledModule(POWER_CURRENT_BUDGET / 4 / POWER_DRIVE_MAX_CURRENT * 1.5);
+        }
+        PowerManager power = new PowerManager(modules);
+        for (int i = 0; i < 100; i++) {
+            power.update(12.0, DT);
+        }
+        assertTrue(power.getDriveLimit() < POWER_DRIVE_MAX_CURRENT);
+
+        for (StalledModule module : modules) {
+            module.ampsPerLimitAmp = 0.5;
+        }
+        for (int i = 0; i < 200; i++) {
+            power.update(12.0, DT);
+        }
+        assertEquals(POWER_DRIVE_MAX_CURRENT, power.getDriveLimit(), 0.0);
+    }
+}